@@ -0,0 +1,26 @@
+package cn.shalee.workupload.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Redis配置
+ * @author 31930
+ */
+@Configuration
+public class RedisConfig {
+    
+    /**
+     * Redis发布订阅监听容器（用于多节点间的缓存失效通知）
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // Redis断开后每5秒尝试重新订阅
+        container.setRecoveryInterval(5000L);
+        return container;
+    }
+}
@@ -0,0 +1,251 @@
+package cn.shalee.workupload.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 数据库版本迁移
+ * 表结构仍由Hibernate（ddl-auto=update）根据实体维护，索引等实体表达不了的变更放在 db/migration/V{版本}__{描述}.sql 中，
+ * 在所有单例初始化完成后（Hibernate已建好表、Web服务尚未启动）按版本号依次执行，执行记录保存在schema_migration表
+ * 多个节点同时启动时用MySQL的GET_LOCK保证只有一个节点执行；其他数据库（如测试用的H2）只有单个进程访问，不加锁
+ * @author 31930
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SchemaMigrationRunner implements SmartInitializingSingleton {
+
+    private static final String LOCATION = "classpath:db/migration/V*__*.sql";
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final String LOCK_NAME = "workupload_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    /**
+     * MySQL错误码：索引名已存在（索引可能已由Hibernate或手工创建）
+     */
+    private static final int ER_DUP_KEYNAME = 1061;
+
+    /**
+     * MySQL错误码：要删除的索引不存在（脚本失败后重新执行时已被删除）
+     */
+    private static final int ER_CANT_DROP_FIELD_OR_KEY = 1091;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.migration.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            log.info("数据库迁移已关闭");
+            return;
+        }
+        List<MigrationScript> scripts = loadScripts();
+        if (scripts.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            migrate(connection, scripts);
+            return null;
+        });
+    }
+
+    private void migrate(Connection connection, List<MigrationScript> scripts) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_migration (" +
+                    "version INT NOT NULL PRIMARY KEY, " +
+                    "description VARCHAR(200) NOT NULL, " +
+                    "checksum CHAR(64) NOT NULL, " +
+                    "installed_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+
+        boolean mysql = isMySql(connection);
+        if (mysql && !acquireLock(connection)) {
+            throw new IllegalStateException("等待数据库迁移锁超时");
+        }
+        try {
+            Map<Integer, String> applied = loadApplied(connection);
+            for (MigrationScript script : scripts) {
+                String checksum = applied.get(script.version());
+                if (checksum != null) {
+                    if (!checksum.equals(script.checksum())) {
+                        log.warn("已执行的迁移脚本被修改过: V{}__{}", script.version(), script.description());
+                    }
+                    continue;
+                }
+                apply(connection, script);
+            }
+        } finally {
+            if (mysql) {
+                releaseLock(connection);
+            }
+        }
+    }
+
+    /**
+     * 执行一个迁移脚本；MySQL的DDL会隐式提交，失败时不记录版本，修复后重启会从头重新执行该脚本
+     */
+    private void apply(Connection connection, MigrationScript script) throws SQLException {
+        log.info("执行数据库迁移: V{}__{}", script.version(), script.description());
+        long start = System.currentTimeMillis();
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : script.statements()) {
+                try {
+                    statement.execute(sql);
+                } catch (SQLException e) {
+                    if (e.getErrorCode() == ER_DUP_KEYNAME) {
+                        log.info("索引已存在，跳过: {}", sql);
+                    } else if (e.getErrorCode() == ER_CANT_DROP_FIELD_OR_KEY) {
+                        log.info("索引不存在，跳过: {}", sql);
+                    } else {
+                        throw e;
+                    }
+                }
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO schema_migration (version, description, checksum) VALUES (?, ?, ?)")) {
+            insert.setInt(1, script.version());
+            insert.setString(2, script.description());
+            insert.setString(3, script.checksum());
+            insert.executeUpdate();
+        }
+        log.info("数据库迁移完成: V{}, statements={}, 耗时{}ms",
+                script.version(), script.statements().size(), System.currentTimeMillis() - start);
+    }
+
+    private Map<Integer, String> loadApplied(Connection connection) throws SQLException {
+        Map<Integer, String> applied = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT version, checksum FROM schema_migration")) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+        return applied;
+    }
+
+    private boolean isMySql(Connection connection) throws SQLException {
+        String product = connection.getMetaData().getDatabaseProductName();
+        if (!"MySQL".equalsIgnoreCase(product)) {
+            log.info("数据库不是MySQL，执行迁移时不加锁: {}", product);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean acquireLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void releaseLock(Connection connection) {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.executeQuery().close();
+        } catch (SQLException e) {
+            log.warn("释放数据库迁移锁失败: {}", e.getMessage());
+        }
+    }
+
+    private List<MigrationScript> loadScripts() {
+        List<MigrationScript> scripts = new ArrayList<>();
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+                String content = resource.getContentAsString(StandardCharsets.UTF_8);
+                scripts.add(MigrationScript.of(resource.getFilename(), content));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("读取数据库迁移脚本失败", e);
+        }
+        scripts.sort(Comparator.comparingInt(MigrationScript::version));
+        for (int i = 1; i < scripts.size(); i++) {
+            if (scripts.get(i).version() == scripts.get(i - 1).version()) {
+                throw new IllegalStateException("数据库迁移脚本版本重复: V" + scripts.get(i).version());
+            }
+        }
+        return scripts;
+    }
+
+    /**
+     * 按分号拆分SQL语句，忽略空行和 -- 开头的注释行（脚本中不使用存储过程，不需要处理自定义分隔符）
+     */
+    static List<String> parseStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : script.split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            if (current.length() > 0) {
+                current.append('\n');
+            }
+            current.append(line);
+            if (trimmed.endsWith(";")) {
+                String sql = current.toString().trim();
+                statements.add(sql.substring(0, sql.length() - 1).trim());
+                current.setLength(0);
+            }
+        }
+        if (!current.toString().isBlank()) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    record MigrationScript(int version, String description, String checksum, List<String> statements) {
+
+        static MigrationScript of(String fileName, String content) {
+            Matcher matcher = SCRIPT_NAME.matcher(fileName);
+            if (!matcher.matches()) {
+                throw new IllegalStateException("数据库迁移脚本命名不正确: " + fileName);
+            }
+            return new MigrationScript(
+                    Integer.parseInt(matcher.group(1)),
+                    matcher.group(2).replace('_', ' '),
+                    sha256(content),
+                    parseStatements(content));
+        }
+
+        private static String sha256(String content) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256不可用", e);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package cn.shalee.workupload.config;
 
 import cn.shalee.workupload.security.JwtAuthFilter;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -30,6 +31,8 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        // 流式下载完成后的异步分派不再经过JWT过滤器，请求本身已在首次分派时鉴权
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/", "/index.html", "/static/**").permitAll()
                         .requestMatchers("/uploads/**").permitAll()  // 允许访问上传的文件
                         .requestMatchers("/api/auth/**").permitAll()
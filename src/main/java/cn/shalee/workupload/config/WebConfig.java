@@ -1,13 +1,12 @@
 package cn.shalee.workupload.config;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.boot.system.ApplicationHome;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
-import java.io.File;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * @author 31930
@@ -15,32 +14,33 @@ import java.io.File;
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
     
-    private static final Logger log = LoggerFactory.getLogger(WebConfig.class);
+    /**
+     * 流式下载（StreamingResponseBody）的超时时间：大压缩包在慢速网络下需要较长时间
+     */
+    private static final long STREAMING_TIMEOUT_MS = 30 * 60 * 1000L;
     
     @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // 以可执行jar所在目录为基准，避免工作目录变化导致404
-        ApplicationHome home = new ApplicationHome(WebConfig.class);
-        File homeDir = home.getDir();
-        String uploadsPath = new File(homeDir, "uploads").getAbsolutePath() + File.separator;
-        
-        log.info("配置静态资源映射 - 程序目录: {}", homeDir.getAbsolutePath());
-        log.info("配置静态资源映射 - 上传目录: {}", uploadsPath);
-        
-        // 检查目录是否存在
-        File uploadsDir = new File(uploadsPath);
-        if (uploadsDir.exists()) {
-            log.info("上传目录存在: {}", uploadsDir.getAbsolutePath());
-        } else {
-            log.warn("上传目录不存在: {}", uploadsDir.getAbsolutePath());
-        }
-        
-        // 配置上传文件的静态资源访问
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations("file:" + uploadsPath)
-                .setCachePeriod(3600) // 缓存1小时
-                .resourceChain(true);
-        
-        log.info("静态资源映射配置完成: /uploads/** -> file:{}", uploadsPath);
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(streamingTaskExecutor());
+        configurer.setDefaultTimeout(STREAMING_TIMEOUT_MS);
     }
+    
+    /**
+     * 流式下载专用线程池，限制同时打包下载的并发数
+     */
+    @Bean(name = "streamingTaskExecutor")
+    public ThreadPoolTaskExecutor streamingTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(50);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("StreamingDownload-");
+        // 拒绝策略：由调用线程处理该任务
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+    
+    // /uploads/** 由 UploadsFileController 提供（内存缓存小文件 + sendfile 大文件），不再注册静态资源映射
 }
\ No newline at end of file
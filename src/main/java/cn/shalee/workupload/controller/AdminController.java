@@ -1,11 +1,15 @@
 package cn.shalee.workupload.controller;
 
+import cn.shalee.workupload.service.EmailOutboxService;
 import cn.shalee.workupload.service.HomeworkDeadlineReminderService;
+import cn.shalee.workupload.service.UploadsFileService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+
 /**
  * 管理员功能控制器
  * @author 31930
@@ -17,6 +21,8 @@ import org.springframework.web.bind.annotation.*;
 public class AdminController {
     
     private final HomeworkDeadlineReminderService deadlineReminderService;
+    private final UploadsFileService uploadsFileService;
+    private final EmailOutboxService emailOutboxService;
     
     /**
      * 手动触发作业截止提醒检查
@@ -49,4 +55,20 @@ public class AdminController {
             return ResponseEntity.internalServerError().body("发送失败: " + e.getMessage());
         }
     }
+    
+    /**
+     * 上传文件访问统计（内存缓存命中率、sendfile次数等）
+     */
+    @GetMapping("/uploads-stats")
+    public ResponseEntity<Map<String, Object>> getUploadsStats() {
+        return ResponseEntity.ok(uploadsFileService.getStats());
+    }
+    
+    /**
+     * 邮件发件箱统计（待发送、发送中、已发送、失败数量和本节点处理计数）
+     */
+    @GetMapping("/email-outbox-stats")
+    public ResponseEntity<Map<String, Object>> getEmailOutboxStats() {
+        return ResponseEntity.ok(emailOutboxService.getStats());
+    }
 }
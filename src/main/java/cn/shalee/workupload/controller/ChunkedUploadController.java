@@ -0,0 +1,112 @@
+package cn.shalee.workupload.controller;
+
+import cn.shalee.workupload.dto.request.InitChunkedUploadRequest;
+import cn.shalee.workupload.dto.response.ChunkedUploadResponse;
+import cn.shalee.workupload.dto.response.HomeworkSubmissionResponse;
+import cn.shalee.workupload.service.ChunkedUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * 分片上传控制器（大文件作业提交）
+ * 流程：init创建会话 -> PUT逐个上传分片（可乱序、可重传） -> complete合并并提交作业
+ * 分片以application/octet-stream原始请求体上传，不走multipart解析
+ * @author 31930
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/upload/chunked")
+@RequiredArgsConstructor
+public class ChunkedUploadController {
+
+    private final ChunkedUploadService chunkedUploadService;
+
+    /**
+     * 初始化分片上传
+     */
+    @PostMapping("/init")
+    public ResponseEntity<ChunkedUploadResponse> initUpload(@Valid @RequestBody InitChunkedUploadRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userEmail = authentication.getName();
+
+        try {
+            return ResponseEntity.ok(chunkedUploadService.initUpload(request, userEmail));
+        } catch (IOException e) {
+            log.error("初始化分片上传失败: homeworkId={}", request.getHomeworkId(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 上传单个分片
+     */
+    @PutMapping("/{uploadId}/chunks/{chunkIndex}")
+    public ResponseEntity<ChunkedUploadResponse> uploadChunk(
+            @PathVariable String uploadId,
+            @PathVariable int chunkIndex,
+            @RequestParam("offset") long offset,
+            HttpServletRequest httpRequest) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userEmail = authentication.getName();
+
+        try {
+            ChunkedUploadResponse response = chunkedUploadService.writeChunk(
+                    uploadId, chunkIndex, offset, httpRequest.getInputStream(), userEmail);
+            return ResponseEntity.ok(response);
+        } catch (IOException e) {
+            log.error("分片写入失败: uploadId={}, chunkIndex={}", uploadId, chunkIndex, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 查询上传状态（断线重连后获取缺失的分片）
+     */
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<ChunkedUploadResponse> getUploadStatus(@PathVariable String uploadId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userEmail = authentication.getName();
+
+        return ResponseEntity.ok(chunkedUploadService.getStatus(uploadId, userEmail));
+    }
+
+    /**
+     * 完成上传并提交作业
+     */
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<HomeworkSubmissionResponse> completeUpload(
+            @PathVariable String uploadId,
+            @RequestParam(value = "remarks", required = false) String remarks) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userEmail = authentication.getName();
+
+        log.info("收到完成分片上传请求: uploadId={}, userEmail={}", uploadId, userEmail);
+
+        try {
+            return ResponseEntity.ok(chunkedUploadService.completeUpload(uploadId, remarks, userEmail));
+        } catch (IOException e) {
+            log.error("完成分片上传失败: uploadId={}", uploadId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 取消上传
+     */
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<String> abortUpload(@PathVariable String uploadId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userEmail = authentication.getName();
+
+        chunkedUploadService.abortUpload(uploadId, userEmail);
+        return ResponseEntity.ok("已取消");
+    }
+}
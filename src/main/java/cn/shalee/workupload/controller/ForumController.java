@@ -1,6 +1,7 @@
 package cn.shalee.workupload.controller;
 
 import cn.shalee.workupload.dto.request.CreateForumPostRequest;
+import cn.shalee.workupload.dto.response.CursorPageResponse;
 import cn.shalee.workupload.dto.response.ForumPostResponse;
 import cn.shalee.workupload.service.ForumService;
 import jakarta.validation.Valid;
@@ -59,6 +60,23 @@ public class ForumController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 游标分页获取班级帖子列表（置顶+时间排序，不返回总数）
+     * 第一页不传cursor，之后传上一页返回的next_cursor
+     */
+    @GetMapping("/posts/cursor")
+    public ResponseEntity<CursorPageResponse<ForumPostResponse>> getClassPostsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int pageSize) {
+        
+        pageSize = Math.max(1, Math.min(pageSize, 100));
+        
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userEmail = authentication.getName();
+        
+        return ResponseEntity.ok(forumService.getClassPostsByCursor(userEmail, cursor, pageSize));
+    }
+    
     /**
      * 获取帖子详情
      */
@@ -1,6 +1,7 @@
 package cn.shalee.workupload.controller;
 
 import cn.shalee.workupload.dto.request.CreateHomeworkRequest;
+import cn.shalee.workupload.dto.response.CursorPageResponse;
 import cn.shalee.workupload.dto.response.HomeworkResponse;
 import cn.shalee.workupload.service.HomeworkService;
 import jakarta.validation.Valid;
@@ -50,6 +51,28 @@ public class HomeworkController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 游标分页获取作业列表（按发布先后倒序，不返回总数）
+     * 第一页不传cursor，之后传上一页返回的next_cursor
+     */
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPageResponse<HomeworkResponse>> getHomeworkListByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int pageSize,
+            @RequestParam(required = false) String classCode,
+            @RequestParam(required = false) Integer status,
+            @RequestParam(required = false) Integer courses) {
+        
+        pageSize = Math.max(1, Math.min(pageSize, 100));
+        
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userEmail = authentication.getName();
+        
+        CursorPageResponse<HomeworkResponse> response = homeworkService.getHomeworkListByCursor(
+                userEmail, cursor, pageSize, classCode, status, courses);
+        return ResponseEntity.ok(response);
+    }
+    
     @GetMapping("/{id}")
     public ResponseEntity<HomeworkResponse> getHomeworkDetail(@PathVariable Long id) {
         log.info("收到获取作业详情请求: id={}", id);
@@ -2,6 +2,8 @@ package cn.shalee.workupload.controller;
 
 import cn.shalee.workupload.dto.request.GradeHomeworkRequest;
 import cn.shalee.workupload.dto.request.SubmitHomeworkRequest;
+import cn.shalee.workupload.dto.response.CursorPageResponse;
+import cn.shalee.workupload.dto.response.HomeworkStatsResponse;
 import cn.shalee.workupload.dto.response.HomeworkSubmissionResponse;
 import cn.shalee.workupload.dto.response.SubmissionRecordResponse;
 import cn.shalee.workupload.dto.response.UnsubmittedMemberResponse;
@@ -9,14 +11,14 @@ import cn.shalee.workupload.dto.response.UserSubmissionHistoryResponse;
 import cn.shalee.workupload.entity.Homework;
 import cn.shalee.workupload.entity.User;
 import cn.shalee.workupload.repository.UserRepository;
+import cn.shalee.workupload.service.BlobStoreService;
 import cn.shalee.workupload.service.HomeworkSubmissionService;
+import cn.shalee.workupload.util.FileDownloads;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.system.ApplicationHome;
 import org.springframework.data.domain.Page;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -24,6 +26,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
 import java.io.IOException;
@@ -47,6 +50,7 @@ public class HomeworkSubmissionController {
     
     private final HomeworkSubmissionService homeworkSubmissionService;
     private final UserRepository userRepository;
+    private final BlobStoreService blobStoreService;
     
     /**
      * 提交作业
@@ -99,8 +103,8 @@ public class HomeworkSubmissionController {
                     filePath = uploadPath.resolve(filename);
                 }
                 
-                // 保存文件
-                Files.copy(file.getInputStream(), filePath);
+                // 保存文件（重复提交相同内容时只存一份）
+                blobStoreService.storeAndLink(file.getInputStream(), filePath);
                 
                 // 检查文件名是否被修改（添加了时间戳前缀）
                 boolean filenameModified = !filename.equals(originalFilename);
@@ -159,6 +163,23 @@ public class HomeworkSubmissionController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 游标分页获取我的作业提交列表（不返回总数，深翻页不变慢）
+     * 第一页不传cursor，之后传上一页返回的next_cursor
+     */
+    @GetMapping("/my/cursor")
+    public ResponseEntity<CursorPageResponse<HomeworkSubmissionResponse>> getMySubmissionsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int pageSize) {
+        
+        pageSize = Math.max(1, Math.min(pageSize, 100));
+        
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userEmail = authentication.getName();
+        
+        return ResponseEntity.ok(homeworkSubmissionService.getMySubmissionsByCursor(userEmail, cursor, pageSize));
+    }
+    
     /**
      * 获取用户历史提交记录
      */
@@ -256,14 +277,14 @@ public class HomeworkSubmissionController {
      * 获取作业统计信息（学委/管理员）
      */
     @GetMapping("/homework/{homeworkId}/stats")
-    public ResponseEntity<Object> getHomeworkStats(@PathVariable Long homeworkId) {
+    public ResponseEntity<HomeworkStatsResponse> getHomeworkStats(@PathVariable Long homeworkId) {
         // 获取当前登录用户信息
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String userEmail = authentication.getName();
         
         log.info("收到获取作业统计信息请求: homeworkId={}, userEmail={}", homeworkId, userEmail);
         
-        Object response = homeworkSubmissionService.getHomeworkStats(homeworkId, userEmail);
+        HomeworkStatsResponse response = homeworkSubmissionService.getHomeworkStats(homeworkId, userEmail);
         return ResponseEntity.ok(response);
     }
     
@@ -302,7 +323,7 @@ public class HomeworkSubmissionController {
      * 下载指定提交记录的文件 - 学委/管理员（流式传输优化）
      */
     @GetMapping("/submission/{submissionId}/download")
-    public ResponseEntity<Resource> downloadSubmissionFile(@PathVariable Long submissionId) {
+    public ResponseEntity<?> downloadSubmissionFile(@PathVariable Long submissionId) {
         try {
             // 获取当前登录用户信息
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -332,8 +353,6 @@ public class HomeworkSubmissionController {
             // 直接从文件路径中提取文件名（肯定包含完整的 .docx 等扩展名）
             String fileName = filePath.getFileName().toString();
             
-            // 使用 FileSystemResource 进行流式传输（不占用内存）
-            Resource resource = new FileSystemResource(filePath);
             long fileSize = Files.size(filePath);
             
             // 设置响应头 - 使用最兼容的方式
@@ -346,20 +365,12 @@ public class HomeworkSubmissionController {
                             .filename(fileName, StandardCharsets.UTF_8)
                             .build()
             );
-            // 设置文件大小（让浏览器可以显示下载进度）
-            headers.setContentLength(fileSize);
-            // 禁用缓存和内容嗅探
-            headers.setCacheControl("no-cache, no-store, must-revalidate");
-            headers.set("X-Content-Type-Options", "nosniff");
-            // 支持断点续传
-            headers.set("Accept-Ranges", "bytes");
             
             log.info("提交文件下载开始（流式传输）: submissionId={}, fileName={}, size={} bytes", 
                     submissionId, fileName, fileSize);
             
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(resource);
+            // 流式传输文件，支持断点续传（Range）和协商缓存（ETag/Last-Modified）
+            return FileDownloads.serve(filePath, headers);
                     
         } catch (Exception e) {
             log.error("下载提交文件失败: submissionId={}, error={}", submissionId, e.getMessage(), e);
@@ -368,10 +379,11 @@ public class HomeworkSubmissionController {
     }
     
     /**
-     * 下载作业的所有提交文件（打包为ZIP）- 学委/管理员
+     * 下载作业的所有提交文件（打包为ZIP，流式传输）- 学委/管理员
+     * 压缩包边生成边写入响应，不落临时文件，也不整体读入内存
      */
     @GetMapping("/homework/{homeworkId}/download-all")
-    public ResponseEntity<byte[]> downloadAllHomeworkSubmissions(@PathVariable Long homeworkId) {
+    public ResponseEntity<StreamingResponseBody> downloadAllHomeworkSubmissions(@PathVariable Long homeworkId) {
         // 获取当前登录用户信息
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String userEmail = authentication.getName();
@@ -379,8 +391,8 @@ public class HomeworkSubmissionController {
         log.info("收到下载作业提交包请求: homeworkId={}, userEmail={}", homeworkId, userEmail);
         
         try {
-            // 获取ZIP文件内容
-            byte[] zipContent = homeworkSubmissionService.downloadHomeworkSubmissions(homeworkId, userEmail);
+            // 先完成权限校验并定位作业文件夹（响应开始写出后就无法再返回错误状态码）
+            Path homeworkFolder = homeworkSubmissionService.resolveHomeworkSubmissionsFolder(homeworkId, userEmail);
             
             // 获取文件名
             String fileName = homeworkSubmissionService.getHomeworkSubmissionsZipFileName(homeworkId, userEmail);
@@ -395,17 +407,19 @@ public class HomeworkSubmissionController {
                             .filename(fileName, StandardCharsets.UTF_8)
                             .build()
             );
-            headers.setContentLength(zipContent.length);
+            // 压缩包边生成边传输，总大小未知，使用分块传输（不设置Content-Length）
             // 禁用缓存和内容嗅探
             headers.setCacheControl("no-cache, no-store, must-revalidate");
             headers.set("X-Content-Type-Options", "nosniff");
             
-            log.info("作业提交包下载成功: homeworkId={}, fileName={}, size={} bytes", 
-                    homeworkId, fileName, zipContent.length);
+            StreamingResponseBody body = outputStream ->
+                    homeworkSubmissionService.writeHomeworkSubmissionsZip(homeworkId, homeworkFolder, outputStream);
+            
+            log.info("作业提交包开始下载（流式传输）: homeworkId={}, fileName={}", homeworkId, fileName);
             
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(zipContent);
+                    .body(body);
                     
         } catch (Exception e) {
             log.error("下载作业提交包失败: homeworkId={}, error={}", homeworkId, e.getMessage(), e);
@@ -500,7 +514,7 @@ public class HomeworkSubmissionController {
      * 下载当前用户自己的作业提交文件（流式传输优化）
      */
     @GetMapping("/my/{homeworkId}/download")
-    public ResponseEntity<Resource> downloadMyHomeworkFile(@PathVariable Long homeworkId) {
+    public ResponseEntity<?> downloadMyHomeworkFile(@PathVariable Long homeworkId) {
         try {
             // 获取当前登录用户信息
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -530,8 +544,6 @@ public class HomeworkSubmissionController {
             // 直接从文件路径中提取文件名（肯定包含完整的 .docx 等扩展名）
             String fileName = filePath.getFileName().toString();
             
-            // 使用 FileSystemResource 进行流式传输（不占用内存）
-            Resource resource = new FileSystemResource(filePath);
             long fileSize = Files.size(filePath);
             
             // 设置响应头 - 使用最兼容的方式
@@ -544,20 +556,12 @@ public class HomeworkSubmissionController {
                             .filename(fileName, StandardCharsets.UTF_8)
                             .build()
             );
-            // 设置文件大小（让浏览器可以显示下载进度）
-            headers.setContentLength(fileSize);
-            // 禁用缓存和内容嗅探
-            headers.setCacheControl("no-cache, no-store, must-revalidate");
-            headers.set("X-Content-Type-Options", "nosniff");
-            // 支持断点续传
-            headers.set("Accept-Ranges", "bytes");
             
             log.info("作业文件下载开始（流式传输）: homeworkId={}, userEmail={}, fileName={}, size={} bytes", 
                     homeworkId, userEmail, fileName, fileSize);
             
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(resource);
+            // 流式传输文件，支持断点续传（Range）和协商缓存（ETag/Last-Modified）
+            return FileDownloads.serve(filePath, headers);
                     
         } catch (Exception e) {
             log.error("下载我的作业文件失败: homeworkId={}, error={}", homeworkId, e.getMessage(), e);
@@ -593,6 +597,23 @@ public class HomeworkSubmissionController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 游标分页获取班级提交记录（不返回总数，深翻页不变慢）
+     * 第一页不传cursor，之后传上一页返回的next_cursor
+     */
+    @GetMapping("/records/cursor")
+    public ResponseEntity<CursorPageResponse<SubmissionRecordResponse>> getSubmissionRecordsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int pageSize) {
+        
+        pageSize = Math.max(1, Math.min(pageSize, 100));
+        
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userEmail = authentication.getName();
+        
+        return ResponseEntity.ok(homeworkSubmissionService.getSubmissionRecordsByCursor(userEmail, cursor, pageSize));
+    }
+    
     /**
      * 生成作业文件夹名称
      * 确保与HomeworkService中的逻辑一致
@@ -7,6 +7,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import cn.shalee.workupload.service.BlobStoreService;
+import cn.shalee.workupload.util.FileDownloads;
 import cn.shalee.workupload.util.StoragePaths;
 
 import java.io.IOException;
@@ -22,6 +24,12 @@ public class UploadController {
     
     private static final String UPLOAD_DIR = "uploads/";
     
+    private final BlobStoreService blobStoreService;
+    
+    public UploadController(BlobStoreService blobStoreService) {
+        this.blobStoreService = blobStoreService;
+    }
+    
     /**
      * 上传学委发布的作业附件
      */
@@ -44,9 +52,9 @@ public class UploadController {
             }
             String filename = UUID.randomUUID().toString() + extension;
             
-            // 保存文件
+            // 保存文件（相同内容只存一份）
             Path filePath = uploadPath.resolve(filename);
-            Files.copy(file.getInputStream(), filePath);
+            blobStoreService.storeAndLink(file.getInputStream(), filePath);
             
             String url = "/uploads/homework-attachments/" + filename;
             String fullUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
@@ -86,9 +94,9 @@ public class UploadController {
             }
             String filename = UUID.randomUUID().toString() + extension;
             
-            // 保存文件
+            // 保存文件（相同内容只存一份）
             Path filePath = uploadPath.resolve(filename);
-            Files.copy(file.getInputStream(), filePath);
+            blobStoreService.storeAndLink(file.getInputStream(), filePath);
             
             String url = "/uploads/student-submissions/" + filename;
             String fullUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
@@ -128,9 +136,9 @@ public class UploadController {
             }
             String filename = UUID.randomUUID().toString() + extension;
             
-            // 保存文件
+            // 保存文件（相同内容只存一份）
             Path filePath = uploadPath.resolve(filename);
-            Files.copy(file.getInputStream(), filePath);
+            blobStoreService.storeAndLink(file.getInputStream(), filePath);
             
             String url = "/uploads/general/" + filename;
             String fullUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
@@ -174,9 +182,10 @@ public class UploadController {
 
     /**
      * 通用下载接口：通过相对路径下载文件，避免前端直接拼接端口
+     * 流式传输，支持断点续传（Range）和协商缓存（ETag/Last-Modified）
      */
     @GetMapping("/download")
-    public ResponseEntity<byte[]> download(@RequestParam("path") String relativePath,
+    public ResponseEntity<?> download(@RequestParam("path") String relativePath,
                                            @RequestParam(value = "downloadName", required = false) String downloadName) {
         try {
             if (relativePath.startsWith("http://") || relativePath.startsWith("https://")) {
@@ -207,11 +216,8 @@ public class UploadController {
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.parseMediaType(contentType));
             headers.setContentDispositionFormData("attachment", fileName);
-            headers.setContentLength(Files.size(filePath));
 
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(Files.readAllBytes(filePath));
+            return FileDownloads.serve(filePath, headers);
         } catch (IOException e) {
             log.error("文件下载失败: path={}", relativePath, e);
             return ResponseEntity.internalServerError().build();
@@ -0,0 +1,30 @@
+package cn.shalee.workupload.controller;
+
+import cn.shalee.workupload.service.UploadsFileService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * 上传文件访问控制器（/uploads/**，无需登录）
+ * @author 31930
+ */
+@RestController
+@RequiredArgsConstructor
+public class UploadsFileController {
+
+    private final UploadsFileService uploadsFileService;
+
+    /**
+     * 访问上传的文件（头像、作业附件等）
+     */
+    @RequestMapping(value = "/uploads/**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serveFile(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        uploadsFileService.serve(request, response);
+    }
+}
@@ -0,0 +1,34 @@
+package cn.shalee.workupload.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+/**
+ * 初始化分片上传请求DTO
+ * @author 31930
+ */
+@Data
+public class InitChunkedUploadRequest {
+    
+    @NotNull(message = "作业ID不能为空")
+    @JsonProperty("homework_id")
+    private Long homeworkId;
+    
+    @NotBlank(message = "文件名不能为空")
+    @JsonProperty("file_name")
+    private String fileName;
+    
+    @NotNull(message = "文件大小不能为空")
+    @Positive(message = "文件大小必须大于0")
+    @JsonProperty("file_size")
+    private Long fileSize;
+    
+    /**
+     * 分片大小，不传则使用服务端默认值
+     */
+    @JsonProperty("chunk_size")
+    private Integer chunkSize;
+}
@@ -0,0 +1,47 @@
+package cn.shalee.workupload.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 分片上传状态响应DTO
+ * @author 31930
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkedUploadResponse {
+    
+    @JsonProperty("upload_id")
+    private String uploadId;
+    
+    @JsonProperty("homework_id")
+    private Long homeworkId;
+    
+    @JsonProperty("file_name")
+    private String fileName;
+    
+    @JsonProperty("file_size")
+    private Long fileSize;
+    
+    @JsonProperty("chunk_size")
+    private Integer chunkSize;
+    
+    @JsonProperty("total_chunks")
+    private Integer totalChunks;
+    
+    /**
+     * 尚未收到的分片序号，断线重连后只需补传这些分片
+     */
+    @JsonProperty("missing_chunks")
+    private List<Integer> missingChunks;
+    
+    @JsonProperty("completed")
+    private Boolean completed;
+}
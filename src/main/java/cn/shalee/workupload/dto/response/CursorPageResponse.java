@@ -0,0 +1,33 @@
+package cn.shalee.workupload.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游标分页响应DTO（不返回总数）
+ * @author 31930
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageResponse<T> {
+    
+    @JsonProperty("items")
+    private List<T> items;
+    
+    @JsonProperty("next_cursor")
+    private String nextCursor; // 下一页游标，没有下一页时为null
+    
+    @JsonProperty("has_more")
+    private Boolean hasMore;
+    
+    public static <T> CursorPageResponse<T> of(List<T> items, String nextCursor) {
+        return new CursorPageResponse<>(items, nextCursor, nextCursor != null);
+    }
+}
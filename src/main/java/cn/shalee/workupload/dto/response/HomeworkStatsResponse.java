@@ -0,0 +1,49 @@
+package cn.shalee.workupload.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 作业统计响应DTO
+ * total、onTime、late、graded沿用原接口的字段名
+ * @author 31930
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class HomeworkStatsResponse {
+    
+    @JsonProperty("class_code")
+    private String classCode; // 汇总统计时为null
+    
+    @JsonProperty("total")
+    private Long total;
+    
+    @JsonProperty("onTime")
+    private Long onTime;
+    
+    @JsonProperty("late")
+    private Long late;
+    
+    @JsonProperty("graded")
+    private Long graded; // 已评分数量
+    
+    @JsonProperty("average_score")
+    private BigDecimal averageScore; // 已评分提交的平均分，没有评分时为null
+    
+    @JsonProperty("score_histogram")
+    private Map<String, Long> scoreHistogram; // 按得分率分段：<60%、60-70%、70-80%、80-90%、>=90%
+    
+    @JsonProperty("classes")
+    private List<HomeworkStatsResponse> classes; // 各班级统计（学委只返回本班级）
+}
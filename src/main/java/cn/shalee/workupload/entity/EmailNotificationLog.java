@@ -11,6 +11,7 @@ import java.time.LocalDateTime;
 
 /**
  * 邮件通知发送记录实体
+ * (homework_id, email_type, recipient_email) 的唯一索引由迁移脚本V3创建（先清理重复记录再建索引）
  * @author 31930
  */
 @Entity
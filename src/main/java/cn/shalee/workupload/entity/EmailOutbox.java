@@ -0,0 +1,85 @@
+package cn.shalee.workupload.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 待发送邮件（发件箱）实体
+ * 与作业在同一事务中写入，每个收件人一行；发送线程认领后发送，失败按指数退避重试
+ * 同一作业、同一类型、同一收件人只能有一行，重复入队会被忽略
+ * @author 31930
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "email_outbox",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"homework_id", "email_type", "recipient_email"}))
+public class EmailOutbox {
+
+    /**
+     * 状态：0-待发送，1-发送中（已认领），2-已发送，3-失败（超过重试次数）
+     */
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_SENDING = 1;
+    public static final int STATUS_SENT = 2;
+    public static final int STATUS_FAILED = 3;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "homework_id", nullable = false)
+    private Long homeworkId;
+
+    /**
+     * 邮件类型 (1-发布提醒, 2-截止提醒)
+     */
+    @Column(name = "email_type", nullable = false)
+    private Integer emailType;
+
+    @Column(name = "recipient_email", nullable = false)
+    private String recipientEmail;
+
+    @Column(name = "recipient_student_id", nullable = false)
+    private String recipientStudentId;
+
+    @Column(name = "recipient_name")
+    private String recipientName;
+
+    @Column(name = "status", nullable = false)
+    private Integer status;
+
+    /**
+     * 已尝试发送次数
+     */
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    /**
+     * 下次可以发送的时间（重试退避）
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    /**
+     * 认领租约到期时间，发送中的节点宕机后由其他节点在租约到期后重新认领
+     */
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
@@ -20,6 +20,18 @@ import java.time.LocalDateTime;
 @Table(name = "forum_post")
 public class ForumPost {
     
+    /**
+     * 热度达到该值的帖子标记为热门
+     */
+    public static final int HOT_THRESHOLD = 20;
+    
+    /**
+     * 热度 = 点赞数 + 回复数×2 + 浏览数×0.1
+     * 计数只通过SQL相对更新，同一条UPDATE末尾拼接这段赋值重新计算热度和热门标记（MySQL按从左到右的顺序使用更新后的值）
+     */
+    public static final String HOT_SCORE_ASSIGNMENT =
+            "hot_score = like_count + reply_count * 2 + view_count * 0.1, is_hot = (hot_score >= " + HOT_THRESHOLD + ")";
+    
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -45,21 +57,24 @@ public class ForumPost {
     @Column(name = "attachment_name", length = 255)
     private String attachmentName;
     
-    @Column(name = "like_count", nullable = false)
+    @Column(name = "like_count", nullable = false, updatable = false)
     private Integer likeCount = 0;
     
-    @Column(name = "reply_count", nullable = false)
+    @Column(name = "reply_count", nullable = false, updatable = false)
     private Integer replyCount = 0;
     
-    @Column(name = "view_count", nullable = false)
+    @Column(name = "view_count", nullable = false, updatable = false)
     private Integer viewCount = 0;
     
     @Column(name = "is_top", nullable = false)
     private Boolean isTop = false;
     
-    @Column(name = "is_hot", nullable = false)
+    @Column(name = "is_hot", nullable = false, updatable = false)
     private Boolean isHot = false;
     
+    @Column(name = "hot_score", nullable = false, updatable = false)
+    private Double hotScore = 0.0;
+    
     @Column(nullable = false)
     private Integer status = 1; // 0-已删除，1-正常，2-隐藏
     
@@ -78,6 +93,7 @@ public class ForumPost {
         if (viewCount == null) viewCount = 0;
         if (isTop == null) isTop = false;
         if (isHot == null) isHot = false;
+        if (hotScore == null) hotScore = 0.0;
         if (status == null) status = 1;
     }
     
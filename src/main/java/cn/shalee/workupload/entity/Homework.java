@@ -57,6 +57,18 @@ public class Homework {
     // 0: 草稿, 1: 已发布, 2: 已截止
     private Integer status;
     
+    /**
+     * 本作业第一份提交的ID，只由HomeworkRepository中的条件更新语句维护，实体保存时不写入
+     */
+    @Column(name = "first_submission_id", insertable = false, updatable = false)
+    private Long firstSubmissionId;
+    
+    /**
+     * 截止提醒发送时间，为空表示尚未发送；只由HomeworkRepository中的条件更新语句维护
+     */
+    @Column(name = "deadline_reminder_sent_at", insertable = false, updatable = false)
+    private LocalDateTime deadlineReminderSentAt;
+    
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     
@@ -2,6 +2,8 @@ package cn.shalee.workupload.repository;
 
 import cn.shalee.workupload.entity.EmailNotificationLog;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -24,6 +26,13 @@ public interface EmailNotificationLogRepository extends JpaRepository<EmailNotif
      */
     boolean existsByHomeworkIdAndRecipientEmailAndEmailType(Long homeworkId, String recipientEmail, Integer emailType);
     
+    /**
+     * 查找作业某类邮件已发送成功的收件人
+     */
+    @Query("SELECT l.recipientEmail FROM EmailNotificationLog l " +
+            "WHERE l.homeworkId = :homeworkId AND l.emailType = :emailType AND l.sendStatus = 1")
+    List<String> findSentRecipientEmails(@Param("homeworkId") Long homeworkId, @Param("emailType") Integer emailType);
+    
     /**
      * 根据作业ID查找所有发送记录
      */
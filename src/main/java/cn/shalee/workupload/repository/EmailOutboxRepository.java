@@ -0,0 +1,69 @@
+package cn.shalee.workupload.repository;
+
+import cn.shalee.workupload.entity.EmailOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 发件箱数据访问层
+ * @author 31930
+ */
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    /**
+     * 锁定到期的待发送邮件，以及租约已过期（发送节点宕机）的发送中邮件
+     * SKIP LOCKED跳过其他节点正在认领的行，多个节点可以同时认领互不阻塞；需要在事务中调用
+     */
+    @Query(value = "SELECT * FROM email_outbox " +
+            "WHERE (status = 0 AND next_attempt_at <= :now) OR (status = 1 AND locked_until < :now) " +
+            "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<EmailOutbox> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE EmailOutbox o SET o.status = 2, o.sentAt = :sentAt, o.lockedUntil = null, o.lastError = null " +
+            "WHERE o.id IN :ids AND o.status = 1")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") LocalDateTime sentAt);
+
+    /**
+     * 发送失败：退回待发送并推迟下次发送时间
+     */
+    @Modifying
+    @Query("UPDATE EmailOutbox o SET o.status = 0, o.nextAttemptAt = :nextAttemptAt, o.lockedUntil = null, " +
+            "o.lastError = :error WHERE o.id = :id AND o.status = 1")
+    int reschedule(@Param("id") Long id, @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("error") String error);
+
+    @Modifying
+    @Query("UPDATE EmailOutbox o SET o.status = 3, o.lockedUntil = null, o.lastError = :error " +
+            "WHERE o.id = :id AND o.status = 1")
+    int markFailed(@Param("id") Long id, @Param("error") String error);
+
+    /**
+     * 作业被删除：待发送和发送中的邮件标记为失败，不再发送和重试
+     * 发送中的邮件之后的markSent/reschedule要求status = 1，不会再改回来
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox o SET o.status = 3, o.lockedUntil = null, o.lastError = :error " +
+            "WHERE o.homeworkId = :homeworkId AND o.status IN (0, 1)")
+    int cancelByHomeworkId(@Param("homeworkId") Long homeworkId, @Param("error") String error);
+
+    /**
+     * 各状态的邮件数量
+     */
+    @Query("SELECT o.status AS status, COUNT(o) AS count FROM EmailOutbox o GROUP BY o.status")
+    List<StatusCount> countByStatus();
+
+    interface StatusCount {
+        Integer getStatus();
+        Long getCount();
+    }
+}
@@ -2,8 +2,13 @@ package cn.shalee.workupload.repository;
 
 import cn.shalee.workupload.entity.ForumLike;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -27,6 +32,30 @@ public interface ForumLikeRepository extends JpaRepository<ForumLike, Long> {
      * 删除点赞记录
      */
     void deleteByPostIdAndStudentId(Long postId, String studentId);
+    
+    /**
+     * 取消点赞
+     * @return 删除行数，0表示原本就没有点赞
+     */
+    @Modifying
+    @Query(value = "DELETE FROM forum_like WHERE post_id = :postId AND student_id = :studentId", nativeQuery = true)
+    int deleteLike(@Param("postId") Long postId, @Param("studentId") String studentId);
+    
+    /**
+     * 点赞（依赖(post_id, student_id)唯一约束，重复点赞不报错）
+     * 重复键时什么都不改；不用INSERT IGNORE，它会把截断、非空、外键等其他错误也降级成警告
+     * @return 插入行数，0表示已经点过赞
+     */
+    @Modifying
+    @Query(value = "INSERT INTO forum_like (post_id, student_id, created_at) VALUES (:postId, :studentId, NOW()) " +
+            "ON DUPLICATE KEY UPDATE id = id", nativeQuery = true)
+    int insertLike(@Param("postId") Long postId, @Param("studentId") String studentId);
+    
+    /**
+     * 批量查询用户在给定帖子中点赞过的帖子ID
+     */
+    @Query("SELECT fl.postId FROM ForumLike fl WHERE fl.studentId = :studentId AND fl.postId IN :postIds")
+    List<Long> findLikedPostIds(@Param("studentId") String studentId, @Param("postIds") Collection<Long> postIds);
 }
 
 
@@ -4,10 +4,13 @@ import cn.shalee.workupload.entity.ForumPost;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -23,6 +26,18 @@ public interface ForumPostRepository extends JpaRepository<ForumPost, Long> {
     @Query("SELECT fp FROM ForumPost fp WHERE fp.parentId IS NULL AND fp.classCode = :classCode AND fp.status = 1 ORDER BY fp.isTop DESC, fp.createdAt DESC")
     Page<ForumPost> findMainPostsByClassCode(@Param("classCode") String classCode, Pageable pageable);
     
+    /**
+     * 游标分页查询班级主帖（置顶与非置顶分两段，每段按时间、ID倒序，取排在游标之后的帖子）
+     */
+    @Query("SELECT fp FROM ForumPost fp WHERE fp.parentId IS NULL AND fp.classCode = :classCode AND fp.status = 1 " +
+            "AND fp.isTop = :isTop AND (fp.createdAt < :time OR (fp.createdAt = :time AND fp.id < :id)) " +
+            "ORDER BY fp.createdAt DESC, fp.id DESC")
+    List<ForumPost> findMainPostsBefore(@Param("classCode") String classCode,
+                                        @Param("isTop") Boolean isTop,
+                                        @Param("time") LocalDateTime time,
+                                        @Param("id") Long id,
+                                        Pageable limit);
+    
     /**
      * 查询某个帖子的所有回复
      */
@@ -34,11 +49,36 @@ public interface ForumPostRepository extends JpaRepository<ForumPost, Long> {
     Page<ForumPost> findByStudentIdAndStatusOrderByCreatedAtDesc(String studentId, Integer status, Pageable pageable);
     
     /**
-     * 查询热门帖子（按综合热度排序）
+     * 查询热门帖子（按热度排序，由idx_forum_post_hot索引直接提供顺序，见db/migration）
      */
-    @Query("SELECT fp FROM ForumPost fp WHERE fp.parentId IS NULL AND fp.classCode = :classCode AND fp.status = 1 ORDER BY (fp.likeCount + fp.replyCount * 2 + fp.viewCount * 0.1) DESC, fp.createdAt DESC")
+    @Query("SELECT fp FROM ForumPost fp WHERE fp.parentId IS NULL AND fp.classCode = :classCode AND fp.status = 1 ORDER BY fp.hotScore DESC, fp.createdAt DESC")
     Page<ForumPost> findHotPostsByClassCode(@Param("classCode") String classCode, Pageable pageable);
     
+    /**
+     * 原子增减点赞数（不先读后写，不会低于0），同时更新热度
+     */
+    @Modifying
+    @Query(value = "UPDATE forum_post SET like_count = GREATEST(like_count + :delta, 0), " +
+            ForumPost.HOT_SCORE_ASSIGNMENT + " WHERE id = :postId", nativeQuery = true)
+    int adjustLikeCount(@Param("postId") Long postId, @Param("delta") int delta);
+    
+    /**
+     * 原子增减回复数（不会低于0），同时更新热度
+     */
+    @Modifying
+    @Query(value = "UPDATE forum_post SET reply_count = GREATEST(reply_count + :delta, 0), " +
+            ForumPost.HOT_SCORE_ASSIGNMENT + " WHERE id = :postId", nativeQuery = true)
+    int adjustReplyCount(@Param("postId") Long postId, @Param("delta") int delta);
+    
+    /**
+     * 为增加热度字段之前的帖子计算热度
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE forum_post SET " + ForumPost.HOT_SCORE_ASSIGNMENT +
+            " WHERE hot_score = 0 AND (like_count > 0 OR reply_count > 0 OR view_count > 0)", nativeQuery = true)
+    int backfillHotScores();
+    
     /**
      * 统计用户发帖数
      */
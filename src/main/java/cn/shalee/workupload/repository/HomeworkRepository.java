@@ -4,7 +4,11 @@ import cn.shalee.workupload.entity.Homework;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -47,4 +51,67 @@ public interface HomeworkRepository extends JpaRepository<Homework, Long> {
      * 根据状态和课程代码列表查询作业
      */
     Page<Homework> findByStatusAndCourseCodeIn(Integer status, List<Integer> courseCodes, Pageable pageable);
-} 
\ No newline at end of file
+    
+    /**
+     * 游标分页查询作业（按ID倒序），classCode、status为null时不过滤；allCourses为false时按课程代码过滤
+     */
+    @Query("SELECT h FROM Homework h WHERE (:classCode IS NULL OR h.classCode = :classCode) " +
+            "AND (:status IS NULL OR h.status = :status) " +
+            "AND (:allCourses = true OR h.courseCode IN :courseCodes) " +
+            "AND h.id < :id ORDER BY h.id DESC")
+    List<Homework> findHomeworkBefore(@Param("classCode") String classCode,
+                                      @Param("status") Integer status,
+                                      @Param("allCourses") boolean allCourses,
+                                      @Param("courseCodes") List<Integer> courseCodes,
+                                      @Param("id") Long id,
+                                      Pageable limit);
+    
+    /**
+     * 登记首位提交：只有尚无首位提交时才写入，并发提交时只有一个能成功
+     * @return 更新行数，1表示本次提交成为首位提交
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE homework SET first_submission_id = :submissionId " +
+            "WHERE id = :homeworkId AND first_submission_id IS NULL", nativeQuery = true)
+    int claimFirstSubmission(@Param("homeworkId") Long homeworkId, @Param("submissionId") Long submissionId);
+    
+    /**
+     * 首位提交被撤回后，重新指定为剩余提交中最早的一份（没有剩余提交时置空）
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE homework SET first_submission_id = (" +
+            "SELECT hs.id FROM homework_submission hs WHERE hs.homework_id = :homeworkId " +
+            "ORDER BY hs.submission_time, hs.id LIMIT 1) " +
+            "WHERE id = :homeworkId AND first_submission_id = :withdrawnSubmissionId", nativeQuery = true)
+    int reassignFirstSubmission(@Param("homeworkId") Long homeworkId,
+                                @Param("withdrawnSubmissionId") Long withdrawnSubmissionId);
+    
+    /**
+     * 为还没有首位提交记录的作业补全（新增字段前的历史数据）
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE homework h SET h.first_submission_id = (" +
+            "SELECT hs.id FROM homework_submission hs WHERE hs.homework_id = h.id " +
+            "ORDER BY hs.submission_time, hs.id LIMIT 1) " +
+            "WHERE h.first_submission_id IS NULL " +
+            "AND EXISTS (SELECT 1 FROM homework_submission s WHERE s.homework_id = h.id)", nativeQuery = true)
+    int backfillFirstSubmissions();
+    
+    /**
+     * 查询尚未发送截止提醒且未截止的作业（启动时加载提醒定时器）
+     */
+    @Query("SELECT h FROM Homework h WHERE h.deadline > :now AND h.deadlineReminderSentAt IS NULL")
+    List<Homework> findPendingDeadlineReminders(@Param("now") LocalDateTime now);
+    
+    /**
+     * 记录截止提醒已发送；已记录过时返回0
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE homework SET deadline_reminder_sent_at = NOW() " +
+            "WHERE id = :homeworkId AND deadline_reminder_sent_at IS NULL", nativeQuery = true)
+    int markDeadlineReminderSent(@Param("homeworkId") Long homeworkId);
+}
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -90,6 +91,43 @@ public interface HomeworkSubmissionRepository extends JpaRepository<HomeworkSubm
     @Query("SELECT MIN(hs.submissionTime) FROM HomeworkSubmission hs WHERE hs.homeworkId = :homeworkId")
     LocalDateTime findEarliestSubmissionTimeByHomeworkId(@Param("homeworkId") Long homeworkId);
     
+    /**
+     * 按班级汇总作业的提交、评分情况（一次查询）
+     * 分数段按作业满分的60%、70%、80%、90%划分
+     */
+    @Query("SELECT hs.classCode AS classCode, COUNT(hs) AS total, " +
+            "SUM(CASE WHEN hs.submissionStatus = 0 THEN 1 ELSE 0 END) AS onTime, " +
+            "SUM(CASE WHEN hs.submissionStatus = 1 THEN 1 ELSE 0 END) AS late, " +
+            "COUNT(hs.score) AS graded, SUM(hs.score) AS scoreSum, " +
+            "SUM(CASE WHEN hs.score < :p60 THEN 1 ELSE 0 END) AS below60, " +
+            "SUM(CASE WHEN hs.score >= :p60 AND hs.score < :p70 THEN 1 ELSE 0 END) AS from60, " +
+            "SUM(CASE WHEN hs.score >= :p70 AND hs.score < :p80 THEN 1 ELSE 0 END) AS from70, " +
+            "SUM(CASE WHEN hs.score >= :p80 AND hs.score < :p90 THEN 1 ELSE 0 END) AS from80, " +
+            "SUM(CASE WHEN hs.score >= :p90 THEN 1 ELSE 0 END) AS from90 " +
+            "FROM HomeworkSubmission hs WHERE hs.homeworkId = :homeworkId GROUP BY hs.classCode ORDER BY hs.classCode")
+    List<ClassStatsRow> aggregateStatsByClass(@Param("homeworkId") Long homeworkId,
+                                              @Param("p60") BigDecimal p60,
+                                              @Param("p70") BigDecimal p70,
+                                              @Param("p80") BigDecimal p80,
+                                              @Param("p90") BigDecimal p90);
+    
+    /**
+     * 班级统计结果
+     */
+    interface ClassStatsRow {
+        String getClassCode();
+        Long getTotal();
+        Long getOnTime();
+        Long getLate();
+        Long getGraded();
+        BigDecimal getScoreSum();
+        Long getBelow60();
+        Long getFrom60();
+        Long getFrom70();
+        Long getFrom80();
+        Long getFrom90();
+    }
+    
     /**
      * 查询所有提交记录（用于生成提交记录列表）
      */
@@ -101,4 +139,20 @@ public interface HomeworkSubmissionRepository extends JpaRepository<HomeworkSubm
      */
     @Query("SELECT hs FROM HomeworkSubmission hs WHERE hs.classCode = :classCode ORDER BY hs.submissionTime DESC")
     Page<HomeworkSubmission> findAllSubmissionsByClassCode(@Param("classCode") String classCode, Pageable pageable);
+    
+    /**
+     * 游标分页查询提交记录（按提交时间、ID倒序，取排在游标之后的记录），classCode为null时查询所有班级
+     */
+    @Query("SELECT hs FROM HomeworkSubmission hs WHERE (:classCode IS NULL OR hs.classCode = :classCode) " +
+            "AND (hs.submissionTime < :time OR (hs.submissionTime = :time AND hs.id < :id)) " +
+            "ORDER BY hs.submissionTime DESC, hs.id DESC")
+    List<HomeworkSubmission> findSubmissionsBefore(@Param("classCode") String classCode,
+                                                   @Param("time") LocalDateTime time,
+                                                   @Param("id") Long id,
+                                                   Pageable limit);
+    
+    /**
+     * 游标分页查询学生的提交记录（按ID倒序）
+     */
+    List<HomeworkSubmission> findByStudentIdAndIdLessThanOrderByIdDesc(String studentId, Long id, Pageable limit);
 } 
\ No newline at end of file
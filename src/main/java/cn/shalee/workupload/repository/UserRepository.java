@@ -2,9 +2,12 @@ package cn.shalee.workupload.repository;
 
 import cn.shalee.workupload.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -36,4 +39,20 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * 根据班级代码查找所有用户
      */
     List<User> findByClassCode(String classCode);
+    
+    /**
+     * 根据学号批量查找用户
+     */
+    List<User> findByStudentIdIn(Collection<String> studentIds);
+    
+    /**
+     * 查询班级中选了该课程、但还没有提交作业（作业日志中没有status=1的记录）的成员
+     */
+    @Query(value = "SELECT u.* FROM user u WHERE u.class_code = :classCode " +
+            "AND (u.courses & :courseCode) <> 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM homework_log hl WHERE hl.homework_id = :homeworkId " +
+            "AND hl.student_id = u.student_id AND hl.status = 1)", nativeQuery = true)
+    List<User> findUnsubmittedMembers(@Param("classCode") String classCode,
+                                      @Param("courseCode") Integer courseCode,
+                                      @Param("homeworkId") Long homeworkId);
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package cn.shalee.workupload.security;
+
+import cn.shalee.workupload.entity.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 已认证用户缓存（按tokenId）
+ * 缓存通过单点登录校验的用户快照，命中时请求认证不需要查库
+ * 登录、登出、强制下线、修改邮箱时按用户当前的tokenId失效
+ * @author 31930
+ */
+@Slf4j
+@Component
+public class AuthenticatedPrincipalCache {
+
+    /**
+     * 兜底过期时间：禁用账号等未显式失效的变更最多延迟这么久生效
+     */
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    private static final long MAX_SIZE = 10_000;
+
+    private final Cache<String, CustomUserDetails> cache = Caffeine.newBuilder()
+            .expireAfterWrite(TTL)
+            .maximumSize(MAX_SIZE)
+            .build();
+
+    public CustomUserDetails get(String tokenId) {
+        return cache.getIfPresent(tokenId);
+    }
+
+    public void put(String tokenId, User user) {
+        cache.put(tokenId, new CustomUserDetails(user));
+    }
+
+    public void evict(String tokenId) {
+        if (tokenId != null) {
+            cache.invalidate(tokenId);
+            log.debug("已认证用户缓存失效: tokenId={}", tokenId);
+        }
+    }
+}
@@ -10,8 +10,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -25,7 +23,6 @@ import java.io.IOException;
 public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider jwtTokenProvider;
-    private final UserDetailsService userDetailsService;
     private final TokenValidationService tokenValidationService;
 
     @Override
@@ -51,12 +48,14 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             log.debug("JWT Filter - Request URI: {}, JWT: {}", request.getRequestURI(),
                     jwt != null ? "present" : "null");
 
-            if (StringUtils.hasText(jwt) && tokenValidationService.validateToken(jwt)) {
-                String username = jwtTokenProvider.getUsernameFromToken(jwt);
+            // 整个请求只解析一次token，解析结果传给校验服务
+            ParsedToken parsedToken = StringUtils.hasText(jwt) ? jwtTokenProvider.parseToken(jwt) : null;
+            CustomUserDetails userDetails = parsedToken != null ? tokenValidationService.authenticate(parsedToken) : null;
+            if (userDetails != null) {
+                String username = userDetails.getUsername();
                 log.debug("JWT Filter - Valid token, username: {}", username);
 
-                if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                if (SecurityContextHolder.getContext().getAuthentication() == null) {
                     UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                             userDetails, null, userDetails.getAuthorities());
                     authentication.setDetails(
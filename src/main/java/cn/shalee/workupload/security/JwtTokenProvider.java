@@ -2,12 +2,15 @@ package cn.shalee.workupload.security;
 
 import cn.shalee.workupload.entity.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.UUID;
@@ -15,11 +18,22 @@ import java.util.UUID;
 @Component
 public class JwtTokenProvider {
 
-    @Value("${app.jwt.secret}")
-    private String jwtSecret;
+    private final long jwtExpirationMs;
 
-    @Value("${app.jwt.expiration}")
-    private long jwtExpirationMs;
+    /**
+     * 签名密钥和解析器只在启动时构建一次，解析器是线程安全的
+     */
+    private final SecretKey signingKey;
+    private final JwtParser jwtParser;
+
+    public JwtTokenProvider(@Value("${app.jwt.secret}") String jwtSecret,
+                            @Value("${app.jwt.expiration}") long jwtExpirationMs) {
+        this.jwtExpirationMs = jwtExpirationMs;
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+    }
 
     public String generateToken(User user) {
         // 生成唯一的token ID
@@ -31,7 +45,7 @@ public class JwtTokenProvider {
                 .claim("tokenId", tokenId)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
-                .signWith(Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
     
@@ -42,25 +56,29 @@ public class JwtTokenProvider {
         return UUID.randomUUID().toString();
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * 校验签名和有效期并解析token，无效时返回null
+     */
+    public ParsedToken parseToken(String token) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8)))
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
-        } catch (Exception ex) {
-            return false;
+            Claims claims = jwtParser.parseClaimsJws(token).getBody();
+            return new ParsedToken(
+                    claims.getSubject(),
+                    claims.get("role", Integer.class),
+                    claims.get("tokenId", String.class),
+                    claims.getExpiration() != null ? claims.getExpiration().toInstant() : null);
+        } catch (JwtException | IllegalArgumentException ex) {
+            return null;
         }
     }
 
+    public boolean validateToken(String token) {
+        return parseToken(token) != null;
+    }
+
     // 获取JWT中的所有Claims
     public Claims getClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8)))
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return jwtParser.parseClaimsJws(token).getBody();
     }
 
     // 获取JWT中的学号（作为username使用）
@@ -80,4 +98,4 @@ public class JwtTokenProvider {
         Claims claims = getClaimsFromToken(token);
         return claims.get("tokenId", String.class);
     }
-}
\ No newline at end of file
+}
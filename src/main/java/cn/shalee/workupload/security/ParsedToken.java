@@ -0,0 +1,14 @@
+package cn.shalee.workupload.security;
+
+import java.time.Instant;
+
+/**
+ * 已校验签名的JWT内容（不可变）
+ * 一次请求中只解析一次，之后在过滤器和校验服务之间传递
+ * @param subject   学号（旧版本token为邮箱）
+ * @param role      角色类型
+ * @param tokenId   单点登录用的token ID
+ * @param expiresAt 过期时间
+ */
+public record ParsedToken(String subject, Integer role, String tokenId, Instant expiresAt) {
+}
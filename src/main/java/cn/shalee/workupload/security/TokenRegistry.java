@@ -0,0 +1,202 @@
+package cn.shalee.workupload.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 当前有效token登记表（单点登录）
+ * 每个用户当前有效的tokenId保存在Redis（auth:token:{学号}），各节点在本地做一层近缓存；
+ * 登录、登出、强制下线时写Redis并通过发布订阅通知所有节点清除近缓存，请求认证的热路径不查库
+ * Redis中没有记录（过期或Redis不可用）时返回null，由调用方回退到数据库并回填
+ * Redis连续失败后熔断一段时间，期间读取直接回退到数据库，不再每个请求都等待超时
+ * @author 31930
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TokenRegistry implements MessageListener {
+
+    private static final String KEY_PREFIX = "auth:token:";
+    private static final String INVALIDATE_CHANNEL = "auth:token:invalidate";
+
+    /**
+     * 已登出/被强制下线的标记
+     */
+    private static final String REVOKED = "-";
+
+    /**
+     * 近缓存过期时间：正常情况下靠发布订阅失效，这里只是消息丢失时的兜底
+     */
+    private static final Duration NEAR_CACHE_TTL = Duration.ofMinutes(10);
+
+    /**
+     * 连续失败多少次后熔断
+     */
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 3;
+
+    /**
+     * 熔断持续时间，到期后放行一个请求探测Redis是否恢复
+     */
+    private static final long CIRCUIT_OPEN_MS = Duration.ofSeconds(30).toMillis();
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final AuthenticatedPrincipalCache principalCache;
+
+    /**
+     * Redis记录的过期时间与JWT有效期一致，token过期后记录也就没有意义了
+     */
+    @Value("${app.jwt.expiration}")
+    private long jwtExpirationMs;
+
+    private final Cache<String, String> nearCache = Caffeine.newBuilder()
+            .expireAfterWrite(NEAR_CACHE_TTL)
+            .maximumSize(10_000)
+            .build();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong circuitOpenUntil = new AtomicLong();
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 获取用户当前有效的tokenId
+     * @return tokenId；已登出返回空字符串；登记表中没有记录返回null
+     */
+    public String getCurrentTokenId(String studentId) {
+        String cached = nearCache.getIfPresent(studentId);
+        if (cached != null) {
+            return REVOKED.equals(cached) ? "" : cached;
+        }
+        if (!allowRedis()) {
+            return null;
+        }
+        try {
+            String value = redisTemplate.opsForValue().get(KEY_PREFIX + studentId);
+            recordSuccess();
+            if (value == null) {
+                return null;
+            }
+            nearCache.put(studentId, value);
+            return REVOKED.equals(value) ? "" : value;
+        } catch (Exception e) {
+            recordFailure();
+            log.warn("读取token登记表失败，回退到数据库: studentId={}, error={}", studentId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 登录：登记新的tokenId并通知所有节点
+     */
+    public void register(String studentId, String tokenId) {
+        write(studentId, tokenId);
+    }
+
+    /**
+     * 登出/强制下线：标记为无有效token并通知所有节点
+     */
+    public void revoke(String studentId) {
+        write(studentId, REVOKED);
+    }
+
+    /**
+     * 数据库回退校验通过后回填（已有记录时不覆盖，避免把并发登录写入的新值改回去）
+     */
+    public void backfill(String studentId, String tokenId) {
+        if (!allowRedis()) {
+            return;
+        }
+        try {
+            Boolean stored = redisTemplate.opsForValue().setIfAbsent(
+                    KEY_PREFIX + studentId, tokenId, jwtExpirationMs, TimeUnit.MILLISECONDS);
+            recordSuccess();
+            if (Boolean.TRUE.equals(stored)) {
+                nearCache.put(studentId, tokenId);
+            }
+        } catch (Exception e) {
+            recordFailure();
+            log.warn("回填token登记表失败: studentId={}, error={}", studentId, e.getMessage());
+        }
+    }
+
+    /**
+     * 登录/登出写入不受熔断影响：这类请求很少，而且跳过写入会让Redis恢复后残留旧的tokenId
+     */
+    private void write(String studentId, String value) {
+        String previous = nearCache.getIfPresent(studentId);
+        nearCache.put(studentId, value);
+        if (previous != null) {
+            principalCache.evict(previous);
+        }
+        try {
+            redisTemplate.opsForValue().set(KEY_PREFIX + studentId, value, jwtExpirationMs, TimeUnit.MILLISECONDS);
+            redisTemplate.convertAndSend(INVALIDATE_CHANNEL, studentId);
+            recordSuccess();
+        } catch (Exception e) {
+            recordFailure();
+            // Redis不可用时其他节点只能等近缓存过期；删除本节点记录，后续请求回退到数据库
+            log.error("写入token登记表失败: studentId={}, error={}", studentId, e.getMessage());
+            nearCache.invalidate(studentId);
+        }
+    }
+
+    /**
+     * 熔断未打开时放行；熔断到期后只放行抢到探测机会的一个请求，其余请求继续回退到数据库
+     */
+    private boolean allowRedis() {
+        if (consecutiveFailures.get() < CIRCUIT_FAILURE_THRESHOLD) {
+            return true;
+        }
+        long openUntil = circuitOpenUntil.get();
+        long now = System.currentTimeMillis();
+        return now >= openUntil && circuitOpenUntil.compareAndSet(openUntil, now + CIRCUIT_OPEN_MS);
+    }
+
+    private void recordSuccess() {
+        if (consecutiveFailures.getAndSet(0) >= CIRCUIT_FAILURE_THRESHOLD) {
+            log.info("Redis已恢复，token登记表熔断关闭");
+        }
+    }
+
+    private void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() == CIRCUIT_FAILURE_THRESHOLD) {
+            circuitOpenUntil.set(System.currentTimeMillis() + CIRCUIT_OPEN_MS);
+            log.warn("Redis连续{}次访问失败，token登记表熔断{}秒，期间回退到数据库",
+                    CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MS / 1000);
+        }
+    }
+
+    /**
+     * 收到其他节点（或本节点）的失效通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String studentId = new String(message.getBody(), StandardCharsets.UTF_8);
+        String previous = nearCache.getIfPresent(studentId);
+        nearCache.invalidate(studentId);
+        if (previous != null && !REVOKED.equals(previous)) {
+            principalCache.evict(previous);
+        }
+        log.debug("收到token失效通知: studentId={}", studentId);
+    }
+}
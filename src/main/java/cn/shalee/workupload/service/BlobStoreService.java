@@ -0,0 +1,243 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.util.StoragePaths;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * 按内容寻址的文件存储（去重）
+ * 上传时边写边计算SHA-256，相同内容只在blobs/ab/cd/{sha256}保存一份，
+ * 原有的访问路径（/uploads/...下的UUID文件名等）以硬链接的形式指向这份数据，所以已有URL和下载逻辑不需要改动
+ * 引用计数就是文件的硬链接数：删除某个访问路径即减少一次引用，链接数降为1的数据由定时任务回收
+ * 文件系统不支持硬链接时退化为普通拷贝
+ * @author 31930
+ */
+@Slf4j
+@Service
+public class BlobStoreService {
+
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * 存储和回收互斥：避免刚命中的数据在建立链接之前被回收
+     */
+    private final ReentrantReadWriteLock gcLock = new ReentrantReadWriteLock();
+
+    /**
+     * 保存输入流内容并在目标路径建立引用，目标路径已存在时抛出FileAlreadyExistsException（与Files.copy一致）
+     * @return 内容的SHA-256
+     */
+    public String storeAndLink(InputStream inputStream, Path target) throws IOException {
+        if (Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+
+        Path tempDir = StoragePaths.getBlobsBasePath().resolve("tmp");
+        Files.createDirectories(tempDir);
+        Path tempFile = Files.createTempFile(tempDir, "upload-", ".tmp");
+
+        try {
+            // 边写边算哈希，不需要再读一遍文件
+            MessageDigest digest = newDigest();
+            try (DigestInputStream in = new DigestInputStream(inputStream, digest);
+                 OutputStream out = Files.newOutputStream(tempFile)) {
+                in.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+
+            Path blob = blobPath(hash);
+            Files.createDirectories(blob.getParent());
+            Files.createDirectories(target.getParent());
+
+            gcLock.readLock().lock();
+            try {
+                boolean duplicate = true;
+                if (!Files.exists(blob)) {
+                    try {
+                        Files.move(tempFile, blob);
+                        duplicate = false;
+                    } catch (FileAlreadyExistsException e) {
+                        // 并发上传了相同内容，使用已有的数据
+                    }
+                }
+                link(blob, target);
+                log.info("文件已存储: hash={}, target={}, duplicate={}", hash, target.getFileName(), duplicate);
+            } finally {
+                gcLock.readLock().unlock();
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * 保存一个已经写好、哈希已知的文件（分片上传边传边算好了哈希），并在目标路径建立引用
+     * 源文件本身不动，调用方在确认后删除；目标路径已存在时抛出FileAlreadyExistsException
+     */
+    public void storeFileAndLink(Path source, String hash, Path target) throws IOException {
+        if (Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+
+        Path blob = blobPath(hash);
+        Files.createDirectories(blob.getParent());
+        Files.createDirectories(target.getParent());
+
+        gcLock.readLock().lock();
+        try {
+            boolean duplicate = true;
+            if (!Files.exists(blob)) {
+                try {
+                    createBlob(source, blob);
+                    duplicate = false;
+                } catch (FileAlreadyExistsException e) {
+                    // 并发上传了相同内容，使用已有的数据
+                }
+            }
+            link(blob, target);
+            log.info("文件已存储: hash={}, target={}, duplicate={}", hash, target.getFileName(), duplicate);
+        } finally {
+            gcLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取数据当前的引用数（不含数据文件本身），文件系统不支持时返回-1
+     */
+    public int referenceCount(String hash) throws IOException {
+        Path blob = blobPath(hash);
+        if (!Files.exists(blob)) {
+            return 0;
+        }
+        try {
+            return (Integer) Files.getAttribute(blob, "unix:nlink") - 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 定时回收没有任何引用的数据，以及上传中断遗留的临时文件
+     */
+    @Scheduled(cron = "0 30 4 * * ?")
+    public void collectGarbage() {
+        Path base = StoragePaths.getBlobsBasePath();
+        if (!Files.isDirectory(base)) {
+            return;
+        }
+
+        int removed = 0;
+        List<Path> blobs;
+        try (var stream = Files.walk(base, 3)) {
+            blobs = stream.filter(Files::isRegularFile)
+                    .filter(path -> BLOB_NAME.matcher(path.getFileName().toString()).matches())
+                    .toList();
+        } catch (IOException e) {
+            log.error("扫描文件存储目录失败", e);
+            return;
+        }
+
+        for (Path blob : blobs) {
+            gcLock.writeLock().lock();
+            try {
+                Integer links = (Integer) Files.getAttribute(blob, "unix:nlink");
+                if (links <= 1) {
+                    Files.delete(blob);
+                    removed++;
+                }
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                log.warn("文件系统不支持链接计数，跳过回收");
+                return;
+            } catch (IOException e) {
+                log.warn("回收文件失败: {}, error={}", blob, e.getMessage());
+            } finally {
+                gcLock.writeLock().unlock();
+            }
+        }
+
+        // 清理一天前中断上传留下的临时文件
+        long expireBefore = System.currentTimeMillis() - 24 * 60 * 60 * 1000L;
+        try (var stream = Files.list(base.resolve("tmp"))) {
+            for (Path temp : stream.toList()) {
+                if (Files.getLastModifiedTime(temp).toMillis() < expireBefore) {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("清理临时文件失败: {}", e.getMessage());
+        }
+
+        log.info("文件存储回收完成: scanned={}, removed={}", blobs.size(), removed);
+    }
+
+    /**
+     * 以硬链接的形式把源文件收入存储；不支持硬链接时先拷贝到临时文件再移动，避免其他上传看到拷贝了一半的数据
+     */
+    private void createBlob(Path source, Path blob) throws IOException {
+        try {
+            Files.createLink(blob, source);
+            return;
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            log.debug("无法建立硬链接，改为拷贝: source={}, reason={}", source, e.getMessage());
+        }
+        Path tempDir = StoragePaths.getBlobsBasePath().resolve("tmp");
+        Files.createDirectories(tempDir);
+        Path tempFile = Files.createTempFile(tempDir, "upload-", ".tmp");
+        try {
+            Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, blob);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private void link(Path blob, Path target) throws IOException {
+        try {
+            Files.createLink(target, blob);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // 不支持硬链接（或跨文件系统）时退化为拷贝
+            log.debug("无法建立硬链接，改为拷贝: target={}, reason={}", target, e.getMessage());
+            Files.copy(blob, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    /**
+     * 数据路径：blobs/{前2位}/{3~4位}/{sha256}
+     */
+    private Path blobPath(String hash) {
+        return StoragePaths.getBlobsBasePath()
+                .resolve(hash.substring(0, 2))
+                .resolve(hash.substring(2, 4))
+                .resolve(hash);
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
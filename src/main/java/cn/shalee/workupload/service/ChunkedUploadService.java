@@ -0,0 +1,614 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.dto.request.InitChunkedUploadRequest;
+import cn.shalee.workupload.dto.request.SubmitHomeworkRequest;
+import cn.shalee.workupload.dto.response.ChunkedUploadResponse;
+import cn.shalee.workupload.dto.response.HomeworkSubmissionResponse;
+import cn.shalee.workupload.entity.Homework;
+import cn.shalee.workupload.entity.User;
+import cn.shalee.workupload.exception.BusinessException;
+import cn.shalee.workupload.repository.HomeworkRepository;
+import cn.shalee.workupload.repository.UserRepository;
+import cn.shalee.workupload.util.StoragePaths;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * 分片上传业务逻辑服务
+ * 分片按偏移量直接写入作业文件夹下的临时文件（.part），不经过multipart临时目录，也不整体读入内存
+ * 按顺序到达的分片在写入时顺带计算SHA-256，乱序到达的分片等前面的分片到齐后再从临时文件补算
+ * 所有分片到齐后交给BlobStoreService按内容去重存储，并以不覆盖的方式链接为最终文件名，再交给作业提交流程
+ * @author 31930
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChunkedUploadService {
+
+    /**
+     * 上传中的临时文件后缀，打包下载时会跳过
+     */
+    public static final String PART_SUFFIX = ".part";
+
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 上传会话超过这个时间没有新分片则清理
+     */
+    private static final long SESSION_IDLE_TIMEOUT_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * 每个用户同时进行的上传会话上限（每个会话占用一个预分配长度的临时文件）
+     */
+    private static final int MAX_SESSIONS_PER_USER = 5;
+
+    /**
+     * 临时文件名：.{uploadId}.part
+     */
+    private static final Pattern PART_FILE_NAME = Pattern.compile("\\.[0-9a-f]{32}" + Pattern.quote(PART_SUFFIX));
+
+    private final HomeworkSubmissionService homeworkSubmissionService;
+    private final BlobStoreService blobStoreService;
+    private final HomeworkRepository homeworkRepository;
+    private final UserRepository userRepository;
+
+    /**
+     * 单个文件大小上限，与普通上传保持一致
+     */
+    @Value("${spring.servlet.multipart.max-file-size:512MB}")
+    private DataSize maxFileSize;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    private final long startedAt = System.currentTimeMillis();
+
+    /**
+     * 初始化分片上传
+     */
+    public ChunkedUploadResponse initUpload(InitChunkedUploadRequest request, String userEmail) throws IOException {
+        log.info("初始化分片上传: userEmail={}, homeworkId={}, fileName={}, fileSize={}",
+                userEmail, request.getHomeworkId(), request.getFileName(), request.getFileSize());
+
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new BusinessException("USER-001", "用户不存在"));
+
+        Homework homework = homeworkRepository.findById(request.getHomeworkId())
+                .orElseThrow(() -> new BusinessException("HOMEWORK-001", "作业不存在"));
+
+        if (request.getFileSize() > maxFileSize.toBytes()) {
+            throw new BusinessException("UPLOAD-001", "文件大小超过限制: " + maxFileSize.toMegabytes() + "MB");
+        }
+
+        long openSessions = sessions.values().stream().filter(session -> session.userEmail.equals(userEmail)).count();
+        if (openSessions >= MAX_SESSIONS_PER_USER) {
+            throw new BusinessException("UPLOAD-008", "进行中的上传过多，请先完成或取消已有上传");
+        }
+
+        String fileName = sanitizeFileName(request.getFileName());
+        int chunkSize = request.getChunkSize() != null
+                ? Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, request.getChunkSize()))
+                : DEFAULT_CHUNK_SIZE;
+        int totalChunks = (int) ((request.getFileSize() + chunkSize - 1) / chunkSize);
+
+        // 临时文件放在最终目录下，完成后同目录重命名，不需要再拷贝一次
+        Path folder = homeworkSubmissionService.resolveHomeworkFolder(homework);
+        Files.createDirectories(folder);
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
+        Path partFile = folder.resolve("." + uploadId + PART_SUFFIX);
+
+        // 预先设置文件长度（稀疏文件，不实际占用磁盘），分片可以乱序、并发写入
+        try (RandomAccessFile file = new RandomAccessFile(partFile.toFile(), "rw")) {
+            file.setLength(request.getFileSize());
+        }
+
+        UploadSession session = new UploadSession(uploadId, userEmail, homework.getId(), fileName,
+                request.getFileSize(), chunkSize, totalChunks, folder, partFile);
+        sessions.put(uploadId, session);
+
+        log.info("分片上传已创建: uploadId={}, chunkSize={}, totalChunks={}", uploadId, chunkSize, totalChunks);
+        return toResponse(session);
+    }
+
+    /**
+     * 写入一个分片：从请求体边读边按偏移量写入临时文件
+     */
+    public ChunkedUploadResponse writeChunk(String uploadId, int chunkIndex, long offset, InputStream body,
+                                            String userEmail) throws IOException {
+        UploadSession session = getSession(uploadId, userEmail);
+
+        if (chunkIndex < 0 || chunkIndex >= session.totalChunks) {
+            throw new BusinessException("UPLOAD-003", "分片序号无效: " + chunkIndex);
+        }
+        long expectedOffset = (long) chunkIndex * session.chunkSize;
+        if (offset != expectedOffset) {
+            throw new BusinessException("UPLOAD-004", "分片偏移量不正确，应为: " + expectedOffset);
+        }
+        long expectedLength = Math.min(session.chunkSize, session.fileSize - expectedOffset);
+
+        // 写分片期间持有会话读锁（分片之间可以并发），完成上传时持写锁，已进入完成流程的会话不再接受分片
+        session.lock.readLock().lock();
+        try {
+            if (session.finalizing) {
+                throw new BusinessException("UPLOAD-009", "上传已在完成中，不能再写入分片");
+            }
+
+            // 正好是下一个待计算哈希的分片时边写边算
+            MessageDigest chunkDigest = session.beginStreamingHash(chunkIndex);
+            boolean hashed = false;
+            try {
+                long written = 0;
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                try (FileChannel channel = FileChannel.open(session.partFile, StandardOpenOption.WRITE)) {
+                    int read;
+                    while ((read = body.read(buffer.array(), 0, (int) Math.min(BUFFER_SIZE, expectedLength - written + 1))) != -1) {
+                        if (written + read > expectedLength) {
+                            throw new BusinessException("UPLOAD-005", "分片数据超出预期长度: " + expectedLength);
+                        }
+                        if (chunkDigest != null) {
+                            chunkDigest.update(buffer.array(), 0, read);
+                        }
+                        buffer.clear().limit(read);
+                        while (buffer.hasRemaining()) {
+                            written += channel.write(buffer, offset + written);
+                        }
+                    }
+                }
+
+                if (written != expectedLength) {
+                    // 传输中断，分片保持未完成状态，客户端重传即可
+                    throw new BusinessException("UPLOAD-005", "分片数据不完整: 期望" + expectedLength + "字节，实际" + written + "字节");
+                }
+
+                session.markReceived(chunkIndex);
+                hashed = chunkDigest != null;
+            } finally {
+                session.finishChunkHash(chunkIndex, chunkDigest, hashed);
+            }
+        } finally {
+            session.lock.readLock().unlock();
+        }
+
+        // 补算已经到齐、但之前因乱序没能边写边算的分片（读的是刚写过的页缓存）
+        try {
+            session.catchUpHash(false);
+        } catch (IOException e) {
+            log.debug("补算分片哈希失败，完成上传时重试: uploadId={}, error={}", uploadId, e.getMessage());
+        }
+        log.debug("分片写入完成: uploadId={}, chunkIndex={}, length={}", uploadId, chunkIndex, expectedLength);
+        return toResponse(session);
+    }
+
+    /**
+     * 查询上传状态（断线重连后用于确定需要补传的分片）
+     */
+    public ChunkedUploadResponse getStatus(String uploadId, String userEmail) {
+        return toResponse(getSession(uploadId, userEmail));
+    }
+
+    /**
+     * 完成上传：会话标记为完成中（之后的分片写入被拒绝），存入去重存储并以不覆盖的方式放到最终文件名，再提交作业
+     * 提交失败时文件恢复为临时文件、会话恢复，客户端可以重试或取消
+     */
+    public HomeworkSubmissionResponse completeUpload(String uploadId, String remarks, String userEmail) throws IOException {
+        UploadSession session = getSession(uploadId, userEmail);
+
+        // 与普通提交一致，用户和作业不存在时不落盘
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new BusinessException("USER-001", "用户不存在"));
+        if (!homeworkRepository.existsById(session.homeworkId)) {
+            throw new BusinessException("HOMEWORK-001", "作业不存在");
+        }
+
+        beginFinalize(session);
+
+        String originalFilename = session.fileName;
+        Path filePath;
+        try {
+            String hash = session.contentHash();
+            filePath = placeFile(session, user, hash);
+        } catch (IOException | RuntimeException e) {
+            restoreSession(session);
+            throw e;
+        }
+        String filename = filePath.getFileName().toString();
+
+        String fileUrl = "/uploads/homework/" + session.folder.getFileName() + "/" + filename;
+        SubmitHomeworkRequest request = new SubmitHomeworkRequest();
+        request.setHomeworkId(session.homeworkId);
+        request.setSubmissionFileUrl(fileUrl);
+        request.setSubmissionFileName(originalFilename);
+        request.setRemarks(remarks);
+
+        HomeworkSubmissionResponse response;
+        try {
+            response = homeworkSubmissionService.submitHomework(request, userEmail);
+        } catch (RuntimeException e) {
+            // 提交被拒绝：文件不留在作业文件夹中
+            // 作业文件与存储中的数据是同一份，重试前还可能重写分片，所以临时文件拷贝一份独立的
+            try {
+                Files.copy(filePath, session.partFile);
+                restoreSession(session);
+            } catch (IOException copyError) {
+                log.warn("提交失败后恢复临时文件失败，放弃本次上传: {}", filePath, copyError);
+                deletePartFile(session);
+            }
+            Files.deleteIfExists(filePath);
+            throw e;
+        }
+
+        boolean filenameModified = !filename.equals(originalFilename);
+        if (filenameModified) {
+            // 文件名被修改，增加fuck计数
+            Integer currentFuck = user.getFuck() != null ? user.getFuck() : 0;
+            user.setFuck(currentFuck + 1);
+            userRepository.save(user);
+            log.info("用户文件名不规范，增加fuck计数: userId={}, studentId={}, fuck={}",
+                    user.getId(), user.getStudentId(), user.getFuck());
+        }
+
+        log.info("分片上传完成: uploadId={}, url={}, size={}, filenameModified={}",
+                uploadId, fileUrl, session.fileSize, filenameModified);
+        return response;
+    }
+
+    /**
+     * 进入完成流程：等不到写锁说明还有分片在写入，直接拒绝而不是等待慢速上传
+     * 标记完成中并移出会话表，防止同一会话被重复提交，也防止之后的分片改动已经定稿的文件
+     */
+    private void beginFinalize(UploadSession session) {
+        if (!session.lock.writeLock().tryLock()) {
+            throw new BusinessException("UPLOAD-009", "还有分片正在写入，请稍后再完成上传");
+        }
+        try {
+            if (session.finalizing || sessions.get(session.uploadId) != session) {
+                throw new BusinessException("UPLOAD-002", "上传会话不存在或已过期");
+            }
+            if (!session.isComplete()) {
+                throw new BusinessException("UPLOAD-006", "还有分片未上传完成");
+            }
+            session.finalizing = true;
+            sessions.remove(session.uploadId, session);
+        } finally {
+            session.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 提交失败后恢复会话，客户端可以重试完成或取消
+     */
+    private void restoreSession(UploadSession session) {
+        session.lock.writeLock().lock();
+        try {
+            session.finalizing = false;
+            sessions.put(session.uploadId, session);
+        } finally {
+            session.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把临时文件存入去重存储并链接到最终文件名，目标已存在时失败而不是覆盖
+     * 文件名冲突时添加学号和时间戳前缀（与普通上传一致），仍冲突时再加序号；成功后删除临时文件
+     */
+    private Path placeFile(UploadSession session, User user, String hash) throws IOException {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HHmmss"));
+        String prefixed = user.getStudentId() + "_" + timestamp + "_" + session.fileName;
+        for (int attempt = 0; ; attempt++) {
+            String filename = attempt == 0 ? session.fileName
+                    : attempt == 1 ? prefixed
+                    : user.getStudentId() + "_" + timestamp + "_" + attempt + "_" + session.fileName;
+            Path target = session.folder.resolve(filename);
+            try {
+                blobStoreService.storeFileAndLink(session.partFile, hash, target);
+            } catch (FileAlreadyExistsException e) {
+                if (attempt >= 10) {
+                    throw e;
+                }
+                continue;
+            }
+            Files.delete(session.partFile);
+            return target;
+        }
+    }
+
+    /**
+     * 取消上传
+     */
+    public void abortUpload(String uploadId, String userEmail) {
+        UploadSession session = getSession(uploadId, userEmail);
+        sessions.remove(uploadId, session);
+        deletePartFile(session);
+        log.info("分片上传已取消: uploadId={}", uploadId);
+    }
+
+    /**
+     * 定时清理长时间没有进展的上传会话
+     */
+    @Scheduled(fixedDelay = 60 * 60 * 1000L)
+    public void cleanupExpiredSessions() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> {
+            if (now - session.lastActiveAt > SESSION_IDLE_TIMEOUT_MILLIS) {
+                log.info("清理过期分片上传: uploadId={}, fileName={}", session.uploadId, session.fileName);
+                deletePartFile(session);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 启动时清理上次运行遗留的临时文件：会话只保存在内存中，重启后这些文件不会再被续传
+     * 只删除本次启动之前修改过的文件，不影响启动后刚创建的上传
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void cleanupOrphanPartFiles() {
+        Path base = StoragePaths.getUploadsBasePath().resolve("homework");
+        if (!Files.isDirectory(base)) {
+            return;
+        }
+        int removed = 0;
+        try (var stream = Files.walk(base, 2)) {
+            for (Path file : stream.toList()) {
+                if (PART_FILE_NAME.matcher(file.getFileName().toString()).matches()
+                        && Files.getLastModifiedTime(file).toMillis() < startedAt) {
+                    Files.deleteIfExists(file);
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("清理遗留分片临时文件失败: {}", e.getMessage());
+        }
+        if (removed > 0) {
+            log.info("清理遗留分片临时文件: {}个", removed);
+        }
+    }
+
+    private UploadSession getSession(String uploadId, String userEmail) {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null || !session.userEmail.equals(userEmail)) {
+            throw new BusinessException("UPLOAD-002", "上传会话不存在或已过期");
+        }
+        return session;
+    }
+
+    private void deletePartFile(UploadSession session) {
+        try {
+            Files.deleteIfExists(session.partFile);
+        } catch (IOException e) {
+            log.warn("删除分片临时文件失败: {}", session.partFile, e);
+        }
+    }
+
+    /**
+     * 只保留文件名部分，并替换文件系统不允许的字符
+     */
+    private String sanitizeFileName(String fileName) {
+        Path name = Paths.get(fileName.replace('\\', '/')).getFileName();
+        String sanitized = name == null ? "" : name.toString().replaceAll("[\\\\/:*?\"<>|]", "_");
+        if (sanitized.isBlank() || sanitized.startsWith(".")) {
+            throw new BusinessException("UPLOAD-007", "文件名不合法");
+        }
+        return sanitized;
+    }
+
+    private ChunkedUploadResponse toResponse(UploadSession session) {
+        return ChunkedUploadResponse.builder()
+                .uploadId(session.uploadId)
+                .homeworkId(session.homeworkId)
+                .fileName(session.fileName)
+                .fileSize(session.fileSize)
+                .chunkSize(session.chunkSize)
+                .totalChunks(session.totalChunks)
+                .missingChunks(session.missingChunks())
+                .completed(session.isComplete())
+                .build();
+    }
+
+    /**
+     * 上传会话（保存在内存中，客户端断线后凭uploadId续传）
+     */
+    private static class UploadSession {
+        final String uploadId;
+        final String userEmail;
+        final Long homeworkId;
+        final String fileName;
+        final long fileSize;
+        final int chunkSize;
+        final int totalChunks;
+        final Path folder;
+        final Path partFile;
+        private final BitSet received;
+        volatile long lastActiveAt;
+
+        /**
+         * 写分片持读锁，进入/退出完成流程持写锁
+         */
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * 是否已进入完成流程（由lock保护）
+         */
+        boolean finalizing;
+
+        /**
+         * 按顺序累计的内容哈希，hashedChunks之前的分片已计入（都由hashLock保护）
+         */
+        private final ReentrantLock hashLock = new ReentrantLock();
+        private MessageDigest digest = newDigest();
+        private int hashedChunks;
+
+        UploadSession(String uploadId, String userEmail, Long homeworkId, String fileName, long fileSize,
+                      int chunkSize, int totalChunks, Path folder, Path partFile) {
+            this.uploadId = uploadId;
+            this.userEmail = userEmail;
+            this.homeworkId = homeworkId;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.chunkSize = chunkSize;
+            this.totalChunks = totalChunks;
+            this.folder = folder;
+            this.partFile = partFile;
+            this.received = new BitSet(totalChunks);
+            this.lastActiveAt = System.currentTimeMillis();
+        }
+
+        synchronized void markReceived(int chunkIndex) {
+            received.set(chunkIndex);
+            lastActiveAt = System.currentTimeMillis();
+        }
+
+        synchronized boolean isComplete() {
+            return received.cardinality() == totalChunks;
+        }
+
+        synchronized boolean isReceived(int chunkIndex) {
+            return received.get(chunkIndex);
+        }
+
+        /**
+         * 分片正好是下一个待计算哈希的分片、且没有其他线程在算时，返回当前哈希状态的副本供边写边算（持有hashLock直到finishChunkHash）
+         */
+        MessageDigest beginStreamingHash(int chunkIndex) {
+            if (!hashLock.tryLock()) {
+                return null;
+            }
+            if (hashedChunks != chunkIndex) {
+                hashLock.unlock();
+                return null;
+            }
+            return copyDigest(digest);
+        }
+
+        /**
+         * 分片写入结束：边写边算且写入成功时采用新的哈希状态；
+         * 否则如果这个分片之前已经计入哈希（客户端重传），内容可能已变，从头重算
+         */
+        void finishChunkHash(int chunkIndex, MessageDigest chunkDigest, boolean success) {
+            if (chunkDigest == null) {
+                hashLock.lock();
+            }
+            try {
+                if (chunkDigest != null && success) {
+                    digest = chunkDigest;
+                    hashedChunks++;
+                } else if (hashedChunks > chunkIndex) {
+                    digest.reset();
+                    hashedChunks = 0;
+                }
+            } finally {
+                hashLock.unlock();
+            }
+        }
+
+        /**
+         * 从临时文件补算已经连续到齐的分片；wait为false时有其他线程在算就直接返回
+         */
+        void catchUpHash(boolean wait) throws IOException {
+            if (wait) {
+                hashLock.lock();
+            } else if (!hashLock.tryLock()) {
+                return;
+            }
+            try {
+                if (hashedChunks >= totalChunks || !isReceived(hashedChunks)) {
+                    return;
+                }
+                try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.READ)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                    while (hashedChunks < totalChunks && isReceived(hashedChunks)) {
+                        long position = (long) hashedChunks * chunkSize;
+                        long end = Math.min(position + chunkSize, fileSize);
+                        while (position < end) {
+                            buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+                            int read = channel.read(buffer, position);
+                            if (read == -1) {
+                                throw new IOException("分片临时文件长度不足: " + partFile);
+                            }
+                            buffer.flip();
+                            digest.update(buffer);
+                            position += read;
+                        }
+                        hashedChunks++;
+                    }
+                }
+            } finally {
+                hashLock.unlock();
+            }
+        }
+
+        /**
+         * 所有分片到齐后的内容SHA-256（不消耗累计状态，提交失败重试时可以再次获取）
+         */
+        String contentHash() throws IOException {
+            hashLock.lock();
+            try {
+                catchUpHash(true);
+                if (hashedChunks != totalChunks) {
+                    throw new IllegalStateException("分片哈希未计算完成: " + uploadId);
+                }
+                return HexFormat.of().formatHex(copyDigest(digest).digest());
+            } finally {
+                hashLock.unlock();
+            }
+        }
+
+        private static MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256不可用", e);
+            }
+        }
+
+        private static MessageDigest copyDigest(MessageDigest source) {
+            try {
+                return (MessageDigest) source.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException("SHA-256状态无法复制", e);
+            }
+        }
+
+        synchronized List<Integer> missingChunks() {
+            List<Integer> missing = new ArrayList<>();
+            for (int i = received.nextClearBit(0); i < totalChunks; i = received.nextClearBit(i + 1)) {
+                missing.add(i);
+            }
+            return missing;
+        }
+    }
+}
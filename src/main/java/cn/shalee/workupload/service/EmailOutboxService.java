@@ -0,0 +1,188 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.entity.EmailOutbox;
+import cn.shalee.workupload.entity.User;
+import cn.shalee.workupload.repository.EmailOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 邮件发件箱
+ * 入队与业务数据在同一事务中提交，进程重启不会丢失；发送线程用 FOR UPDATE SKIP LOCKED 认领，
+ * 认领时设置租约，节点宕机后租约到期的邮件由其他节点重新认领；失败按指数退避重试，超过次数标记为失败
+ * 同一作业、类型、收件人只入队一次；发送成功后才标记为已发送，宕机发生在SMTP已接收但未标记之间时会重发一次
+ * @author 31930
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmailOutboxService {
+
+    /**
+     * 唯一键冲突时什么都不改；不用INSERT IGNORE，它会把截断、非空等其他错误也降级成警告
+     */
+    private static final String ENQUEUE_SQL = "INSERT INTO email_outbox " +
+            "(homework_id, email_type, recipient_email, recipient_student_id, recipient_name, " +
+            "status, attempts, next_attempt_at, created_at) VALUES (?, ?, ?, ?, ?, 0, 0, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE id = id";
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 认领租约时长，需要大于一批邮件的最长发送时间
+     */
+    @Value("${app.mail.outbox.lease-seconds:600}")
+    private long leaseSeconds;
+
+    @Value("${app.mail.outbox.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${app.mail.outbox.base-backoff-seconds:30}")
+    private long baseBackoffSeconds;
+
+    @Value("${app.mail.outbox.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * 为一组收件人入队，加入调用方的事务；已入队过的收件人被忽略
+     * @return 处理的收件人数量（驱动默认按匹配行数返回，已入队过的收件人也会计入）
+     */
+    @Transactional
+    public int enqueue(Long homeworkId, Integer emailType, List<User> recipients) {
+        if (recipients.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> batch = new ArrayList<>(recipients.size());
+        for (User recipient : recipients) {
+            batch.add(new Object[]{homeworkId, emailType, recipient.getEmail(), recipient.getStudentId(),
+                    recipient.getRealName(), now, now});
+        }
+        int inserted = 0;
+        for (int count : jdbcTemplate.batchUpdate(ENQUEUE_SQL, batch)) {
+            // 驱动不返回逐行结果时按成功计
+            inserted += count < 0 ? 1 : Math.min(count, 1);
+        }
+        enqueued.add(inserted);
+        log.info("邮件入队: homeworkId={}, emailType={}, recipients={}, enqueued={}",
+                homeworkId, emailType, recipients.size(), inserted);
+        return inserted;
+    }
+
+    /**
+     * 认领一批到期的邮件，提交后其他节点在租约到期前不会再认领这些邮件
+     */
+    @Transactional
+    public List<EmailOutbox> claim(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<EmailOutbox> rows = emailOutboxRepository.lockDue(now, limit);
+        for (EmailOutbox row : rows) {
+            row.setStatus(EmailOutbox.STATUS_SENDING);
+            row.setAttempts(row.getAttempts() + 1);
+            row.setLockedUntil(now.plusSeconds(leaseSeconds));
+        }
+        claimed.add(rows.size());
+        return rows;
+    }
+
+    /**
+     * 记录一批邮件的发送结果：成功的标记为已发送，失败的退避重试或放弃
+     * @param errors 发送失败的邮件ID及原因
+     */
+    @Transactional
+    public void complete(List<EmailOutbox> rows, Map<Long, String> errors) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> sentIds = new ArrayList<>();
+        for (EmailOutbox row : rows) {
+            String error = errors.get(row.getId());
+            if (error == null) {
+                sentIds.add(row.getId());
+            } else if (isFinalAttempt(row)) {
+                emailOutboxRepository.markFailed(row.getId(), truncate(error));
+                failed.increment();
+                log.warn("邮件重试次数用尽: id={}, homeworkId={}, recipient={}, attempts={}, error={}",
+                        row.getId(), row.getHomeworkId(), row.getRecipientEmail(), row.getAttempts(), error);
+            } else {
+                emailOutboxRepository.reschedule(row.getId(), now.plus(backoff(row.getAttempts())), truncate(error));
+                retried.increment();
+            }
+        }
+        if (!sentIds.isEmpty()) {
+            emailOutboxRepository.markSent(sentIds, now);
+            sent.add(sentIds.size());
+        }
+    }
+
+    /**
+     * 作业被删除后取消尚未发送的邮件
+     */
+    public void cancelForHomework(Long homeworkId) {
+        int cancelled = emailOutboxRepository.cancelByHomeworkId(homeworkId, "作业已删除");
+        if (cancelled > 0) {
+            log.info("作业已删除，取消未发送的邮件: homeworkId={}, count={}", homeworkId, cancelled);
+        }
+    }
+
+    /**
+     * 本次失败后是否不再重试
+     */
+    public boolean isFinalAttempt(EmailOutbox row) {
+        return row.getAttempts() >= maxAttempts;
+    }
+
+    /**
+     * 第n次失败后的等待时间：base * 2^(n-1)，不超过上限
+     */
+    Duration backoff(int attempts) {
+        long seconds = baseBackoffSeconds << Math.min(Math.max(attempts - 1, 0), 20);
+        return Duration.ofSeconds(Math.min(seconds, maxBackoffSeconds));
+    }
+
+    /**
+     * 发件箱统计（各状态数量和本节点的处理计数）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        String[] names = {"pending", "sending", "sent", "failed"};
+        Map<String, Long> statusCounts = new LinkedHashMap<>();
+        for (String name : names) {
+            statusCounts.put(name, 0L);
+        }
+        for (EmailOutboxRepository.StatusCount count : emailOutboxRepository.countByStatus()) {
+            if (count.getStatus() >= 0 && count.getStatus() < names.length) {
+                statusCounts.put(names[count.getStatus()], count.getCount());
+            }
+        }
+        stats.put("status", statusCounts);
+        stats.put("enqueued", enqueued.sum());
+        stats.put("claimed", claimed.sum());
+        stats.put("sent", sent.sum());
+        stats.put("retried", retried.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > 500 ? error.substring(0, 500) : error;
+    }
+}
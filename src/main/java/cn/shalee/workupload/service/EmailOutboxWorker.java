@@ -0,0 +1,47 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.entity.EmailOutbox;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 发件箱发送任务
+ * 定时认领到期的邮件交给MailDispatcher发送，直到没有到期邮件为止；
+ * 每次认领的数量和MailDispatcher的并行数、速率共同限制了单个节点的发送吞吐
+ * @author 31930
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmailOutboxWorker {
+
+    private final EmailOutboxService emailOutboxService;
+    private final HomeworkEmailNotificationService emailNotificationService;
+
+    @Value("${app.mail.outbox.claim-size:100}")
+    private int claimSize;
+
+    @Scheduled(fixedDelayString = "${app.mail.outbox.poll-interval-ms:2000}")
+    public void poll() {
+        List<EmailOutbox> rows;
+        do {
+            try {
+                rows = emailOutboxService.claim(claimSize);
+            } catch (Exception e) {
+                log.error("认领发件箱邮件失败", e);
+                return;
+            }
+            if (rows.isEmpty()) {
+                return;
+            }
+            Map<Long, String> errors = emailNotificationService.deliver(rows);
+            emailOutboxService.complete(rows, errors);
+        } while (rows.size() == claimSize);
+    }
+}
@@ -0,0 +1,108 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.dto.response.ForumPostResponse;
+import cn.shalee.workupload.entity.ForumPost;
+import cn.shalee.workupload.entity.User;
+import cn.shalee.workupload.repository.ForumLikeRepository;
+import cn.shalee.workupload.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 帖子响应组装
+ * 一页帖子的作者和当前用户的点赞状态各用一次批量查询取回，查询次数与帖子数量无关
+ * 浏览数加上计数器中尚未写回数据库的部分
+ * @author 31930
+ */
+@Component
+@RequiredArgsConstructor
+public class ForumPostAssembler {
+
+    private final UserRepository userRepository;
+    private final ForumLikeRepository forumLikeRepository;
+    private final ForumViewCounter forumViewCounter;
+
+    /**
+     * 组装一页帖子
+     * @param viewerStudentId 当前用户学号，用于判断是否已点赞
+     */
+    public Page<ForumPostResponse> toResponses(Page<ForumPost> posts, String viewerStudentId) {
+        return new PageImpl<>(toResponses(posts.getContent(), viewerStudentId), posts.getPageable(), posts.getTotalElements());
+    }
+
+    /**
+     * 组装帖子列表（顺序与传入一致）
+     * @param viewerStudentId 当前用户学号，用于判断是否已点赞
+     */
+    public List<ForumPostResponse> toResponses(List<ForumPost> posts, String viewerStudentId) {
+        if (posts.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Set<String> authorIds = posts.stream()
+                .map(ForumPost::getStudentId)
+                .collect(Collectors.toSet());
+        Set<Long> postIds = posts.stream()
+                .map(ForumPost::getId)
+                .collect(Collectors.toSet());
+
+        Map<String, User> authors = new HashMap<>();
+        for (User author : userRepository.findByStudentIdIn(authorIds)) {
+            authors.put(author.getStudentId(), author);
+        }
+        Set<Long> likedPostIds = new HashSet<>(forumLikeRepository.findLikedPostIds(viewerStudentId, postIds));
+
+        return posts.stream()
+                .map(post -> toResponse(post, authors.get(post.getStudentId()), likedPostIds.contains(post.getId())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 转换为响应DTO
+     */
+    public ForumPostResponse toResponse(ForumPost post, User author, boolean isLiked) {
+        return ForumPostResponse.builder()
+                .id(post.getId())
+                .studentId(post.getStudentId())
+                .studentName(author != null ? author.getRealName() : "未知用户")
+                .studentAvatar(author != null ? author.getAvatarUrl() : null)
+                .nickname(author != null ? author.getNickname() : null)
+                .classCode(post.getClassCode())
+                .parentId(post.getParentId())
+                .title(post.getTitle())
+                .content(post.getContent())
+                .attachmentUrl(post.getAttachmentUrl())
+                .attachmentName(post.getAttachmentName())
+                .likeCount(post.getLikeCount())
+                .replyCount(post.getReplyCount())
+                .viewCount(viewCount(post))
+                .isTop(post.getIsTop())
+                .isHot(post.getIsHot())
+                .isLiked(isLiked)
+                .status(post.getStatus())
+                .createdAt(post.getCreatedAt())
+                .updatedAt(post.getUpdatedAt())
+                .build();
+    }
+
+    /**
+     * 数据库中的浏览数加上尚未写回的增量
+     */
+    private Integer viewCount(ForumPost post) {
+        long pending = post.getId() != null ? forumViewCounter.pending(post.getId()) : 0;
+        if (pending == 0) {
+            return post.getViewCount();
+        }
+        return (post.getViewCount() != null ? post.getViewCount() : 0) + (int) pending;
+    }
+}
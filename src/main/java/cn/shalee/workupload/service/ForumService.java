@@ -1,24 +1,30 @@
 package cn.shalee.workupload.service;
 
 import cn.shalee.workupload.dto.request.CreateForumPostRequest;
+import cn.shalee.workupload.dto.response.CursorPageResponse;
 import cn.shalee.workupload.dto.response.ForumPostResponse;
-import cn.shalee.workupload.entity.ForumLike;
 import cn.shalee.workupload.entity.ForumPost;
 import cn.shalee.workupload.entity.User;
 import cn.shalee.workupload.exception.BusinessException;
 import cn.shalee.workupload.repository.ForumLikeRepository;
 import cn.shalee.workupload.repository.ForumPostRepository;
 import cn.shalee.workupload.repository.UserRepository;
+import cn.shalee.workupload.util.CursorCodec;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 论坛业务逻辑服务
@@ -29,9 +35,17 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ForumService {
     
+    /**
+     * 点赞/取消点赞遇到死锁或锁等待超时时的最多尝试次数
+     */
+    private static final int LIKE_MAX_ATTEMPTS = 3;
+    
     private final ForumPostRepository forumPostRepository;
     private final ForumLikeRepository forumLikeRepository;
     private final UserRepository userRepository;
+    private final ForumPostAssembler forumPostAssembler;
+    private final ForumViewCounter forumViewCounter;
+    private final TransactionTemplate transactionTemplate;
     
     /**
      * 发布帖子（主帖或回复）
@@ -51,12 +65,12 @@ public class ForumService {
         
         // 如果是回复，检查父帖子是否存在
         if (request.getParentId() != null) {
-            ForumPost parentPost = forumPostRepository.findById(request.getParentId())
-                    .orElseThrow(() -> new BusinessException("FORUM-002", "父帖子不存在"));
+            if (!forumPostRepository.existsById(request.getParentId())) {
+                throw new BusinessException("FORUM-002", "父帖子不存在");
+            }
             
             // 更新父帖子的回复数
-            parentPost.setReplyCount(parentPost.getReplyCount() + 1);
-            forumPostRepository.save(parentPost);
+            forumPostRepository.adjustReplyCount(request.getParentId(), 1);
         }
         
         // 创建帖子
@@ -73,7 +87,22 @@ public class ForumService {
         ForumPost savedPost = forumPostRepository.save(post);
         log.info("帖子发布成功: postId={}, isReply={}", savedPost.getId(), request.getParentId() != null);
         
-        return convertToResponse(savedPost, user, false);
+        return forumPostAssembler.toResponse(savedPost, user, false);
+    }
+    
+    /**
+     * 启动时为历史帖子计算热度
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillHotScores() {
+        try {
+            int updated = forumPostRepository.backfillHotScores();
+            if (updated > 0) {
+                log.info("补全帖子热度: {}个帖子", updated);
+            }
+        } catch (Exception e) {
+            log.error("补全帖子热度失败", e);
+        }
     }
     
     /**
@@ -97,17 +126,42 @@ public class ForumService {
             postPage = forumPostRepository.findMainPostsByClassCode(user.getClassCode(), pageable);
         }
         
-        return postPage.map(post -> {
-            User author = userRepository.findByStudentId(post.getStudentId()).orElse(null);
-            boolean isLiked = forumLikeRepository.existsByPostIdAndStudentId(post.getId(), user.getStudentId());
-            return convertToResponse(post, author, isLiked);
-        });
+        return forumPostAssembler.toResponses(postPage, user.getStudentId());
+    }
+    
+    /**
+     * 游标分页获取班级帖子列表（置顶+时间排序，不查询总数）
+     * 先翻完置顶帖再翻普通帖，游标记录当前所在的段和最后一条帖子的时间、ID
+     */
+    public CursorPageResponse<ForumPostResponse> getClassPostsByCursor(String userEmail, String cursor, int pageSize) {
+        log.info("游标获取班级帖子列表: userEmail={}, pageSize={}", userEmail, pageSize);
+        
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new BusinessException("USER-001", "用户不存在"));
+        
+        CursorCodec.Cursor position = CursorCodec.decode(cursor, 3);
+        boolean isTop = position == null || position.getBoolean(0);
+        LocalDateTime time = position != null ? position.getDateTime(1) : CursorCodec.MAX_TIME;
+        long id = position != null ? position.getLong(2) : Long.MAX_VALUE;
+        
+        // 多取一行用于判断是否还有下一页
+        List<ForumPost> rows = new ArrayList<>(forumPostRepository.findMainPostsBefore(
+                user.getClassCode(), isTop, time, id, PageRequest.of(0, pageSize + 1)));
+        if (isTop && rows.size() <= pageSize) {
+            // 置顶帖已取完，用普通帖补满这一页
+            rows.addAll(forumPostRepository.findMainPostsBefore(
+                    user.getClassCode(), false, CursorCodec.MAX_TIME, Long.MAX_VALUE,
+                    PageRequest.of(0, pageSize + 1 - rows.size())));
+        }
+        
+        String nextCursor = CursorCodec.nextCursor(rows, pageSize,
+                last -> CursorCodec.encode(last.getIsTop(), last.getCreatedAt(), last.getId()));
+        return CursorPageResponse.of(forumPostAssembler.toResponses(CursorCodec.trim(rows, pageSize), user.getStudentId()), nextCursor);
     }
     
     /**
      * 获取帖子详情
      */
-    @Transactional
     public ForumPostResponse getPostDetail(Long postId, String userEmail) {
         log.info("获取帖子详情: postId={}, userEmail={}", postId, userEmail);
         
@@ -117,16 +171,15 @@ public class ForumService {
         ForumPost post = forumPostRepository.findById(postId)
                 .orElseThrow(() -> new BusinessException("FORUM-003", "帖子不存在"));
         
-        // 增加浏览数（只对主帖增加）
+        // 增加浏览数（只对主帖增加，内存累加后定时批量写回）
         if (post.getParentId() == null) {
-            post.setViewCount(post.getViewCount() + 1);
-            forumPostRepository.save(post);
+            forumViewCounter.increment(post.getId());
         }
         
         User author = userRepository.findByStudentId(post.getStudentId()).orElse(null);
         boolean isLiked = forumLikeRepository.existsByPostIdAndStudentId(post.getId(), user.getStudentId());
         
-        return convertToResponse(post, author, isLiked);
+        return forumPostAssembler.toResponse(post, author, isLiked);
     }
     
     /**
@@ -140,47 +193,53 @@ public class ForumService {
         
         List<ForumPost> replies = forumPostRepository.findByParentIdAndStatusOrderByCreatedAtAsc(postId, 1);
         
-        return replies.stream().map(reply -> {
-            User author = userRepository.findByStudentId(reply.getStudentId()).orElse(null);
-            boolean isLiked = forumLikeRepository.existsByPostIdAndStudentId(reply.getId(), currentUser.getStudentId());
-            return convertToResponse(reply, author, isLiked);
-        }).collect(Collectors.toList());
+        return forumPostAssembler.toResponses(replies, currentUser.getStudentId());
     }
     
     /**
      * 点赞/取消点赞
+     * 同一学生对同一帖子的两个并发请求都没删到记录时，各自持有唯一索引上的间隙锁再插入，InnoDB会回滚其中一个；
+     * 被回滚的请求整体重新执行一次事务（此时删除会命中对方已提交的点赞）。帖子行只在最后更新计数时短暂加锁，
+     * 热门帖子上不同学生的点赞不会在整个事务期间排队
      */
-    @Transactional
     public boolean toggleLike(Long postId, String userEmail) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return Boolean.TRUE.equals(transactionTemplate.execute(status -> doToggleLike(postId, userEmail)));
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= LIKE_MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("切换点赞状态遇到锁冲突，重试: postId={}, attempt={}, error={}", postId, attempt, e.getMessage());
+            }
+        }
+    }
+    
+    private boolean doToggleLike(Long postId, String userEmail) {
         log.info("切换点赞状态: postId={}, userEmail={}", postId, userEmail);
         
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new BusinessException("USER-001", "用户不存在"));
         
-        ForumPost post = forumPostRepository.findById(postId)
-                .orElseThrow(() -> new BusinessException("FORUM-003", "帖子不存在"));
-        
-        boolean isLiked = forumLikeRepository.existsByPostIdAndStudentId(postId, user.getStudentId());
+        if (!forumPostRepository.existsById(postId)) {
+            throw new BusinessException("FORUM-003", "帖子不存在");
+        }
         
-        if (isLiked) {
-            // 取消点赞
-            forumLikeRepository.deleteByPostIdAndStudentId(postId, user.getStudentId());
-            post.setLikeCount(Math.max(0, post.getLikeCount() - 1));
-            forumPostRepository.save(post);
+        // 先尝试删除，删到了说明原来已点赞；否则插入点赞。以影响行数为准，连续快速点击也不会重复计数
+        // （删除未命中时持有该键的间隙锁，同一键的并发插入只能等待或死锁重试，插入基本不会走到重复键分支）
+        if (forumLikeRepository.deleteLike(postId, user.getStudentId()) > 0) {
+            forumPostRepository.adjustLikeCount(postId, -1);
             log.info("取消点赞成功: postId={}, studentId={}", postId, user.getStudentId());
             return false;
-        } else {
-            // 点赞
-            ForumLike like = ForumLike.builder()
-                    .postId(postId)
-                    .studentId(user.getStudentId())
-                    .build();
-            forumLikeRepository.save(like);
-            post.setLikeCount(post.getLikeCount() + 1);
-            forumPostRepository.save(post);
+        }
+        
+        if (forumLikeRepository.insertLike(postId, user.getStudentId()) > 0) {
+            forumPostRepository.adjustLikeCount(postId, 1);
             log.info("点赞成功: postId={}, studentId={}", postId, user.getStudentId());
-            return true;
+        } else {
+            log.info("已点赞（并发请求）: postId={}, studentId={}", postId, user.getStudentId());
         }
+        return true;
     }
     
     /**
@@ -208,10 +267,7 @@ public class ForumService {
         
         // 如果是回复，更新父帖子的回复数
         if (post.getParentId() != null) {
-            forumPostRepository.findById(post.getParentId()).ifPresent(parentPost -> {
-                parentPost.setReplyCount(Math.max(0, parentPost.getReplyCount() - 1));
-                forumPostRepository.save(parentPost);
-            });
+            forumPostRepository.adjustReplyCount(post.getParentId(), -1);
         }
         
         log.info("帖子删除成功: postId={}", postId);
@@ -261,39 +317,6 @@ public class ForumService {
         Page<ForumPost> postPage = forumPostRepository.findByStudentIdAndStatusOrderByCreatedAtDesc(
                 user.getStudentId(), 1, pageable);
         
-        return postPage.map(post -> {
-            boolean isLiked = forumLikeRepository.existsByPostIdAndStudentId(post.getId(), user.getStudentId());
-            return convertToResponse(post, user, isLiked);
-        });
-    }
-    
-    /**
-     * 转换为响应DTO
-     */
-    private ForumPostResponse convertToResponse(ForumPost post, User author, boolean isLiked) {
-        return ForumPostResponse.builder()
-                .id(post.getId())
-                .studentId(post.getStudentId())
-                .studentName(author != null ? author.getRealName() : "未知用户")
-                .studentAvatar(author != null ? author.getAvatarUrl() : null)
-                .nickname(author != null ? author.getNickname() : null)
-                .classCode(post.getClassCode())
-                .parentId(post.getParentId())
-                .title(post.getTitle())
-                .content(post.getContent())
-                .attachmentUrl(post.getAttachmentUrl())
-                .attachmentName(post.getAttachmentName())
-                .likeCount(post.getLikeCount())
-                .replyCount(post.getReplyCount())
-                .viewCount(post.getViewCount())
-                .isTop(post.getIsTop())
-                .isHot(post.getIsHot())
-                .isLiked(isLiked)
-                .status(post.getStatus())
-                .createdAt(post.getCreatedAt())
-                .updatedAt(post.getUpdatedAt())
-                .build();
+        return forumPostAssembler.toResponses(postPage, user.getStudentId());
     }
 }
-
-
@@ -0,0 +1,112 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.entity.ForumPost;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 帖子浏览数计数器（延迟写入）
+ * 浏览时只在内存中累加，每隔几秒把各帖子的增量合并成一次批量 UPDATE view_count = view_count + ? 写回数据库，
+ * 浏览不再产生行写入和行锁，并发浏览也不会丢失计数；读取时加上尚未写回的增量
+ * 计数只增不清零（记录已写回的值来计算增量），写库失败的增量会在下次重试；全部写回后移除该帖子的计数器，内存只保留近期被浏览的帖子
+ * @author 31930
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ForumViewCounter {
+
+    private static final String FLUSH_SQL =
+            "UPDATE forum_post SET view_count = view_count + ?, " + ForumPost.HOT_SCORE_ASSIGNMENT + " WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次浏览
+     */
+    public void increment(Long postId) {
+        // 在compute中累加，与flush移除计数器互斥，不会加到已被移除的计数器上
+        counters.compute(postId, (id, counter) -> {
+            Counter target = counter == null ? new Counter() : counter;
+            target.views.increment();
+            return target;
+        });
+    }
+
+    /**
+     * 尚未写回数据库的浏览数
+     */
+    public long pending(Long postId) {
+        Counter counter = counters.get(postId);
+        return counter == null ? 0 : counter.pending();
+    }
+
+    /**
+     * 定时把增量写回数据库
+     */
+    @Scheduled(fixedDelay = 5000)
+    public synchronized void flush() {
+        List<Object[]> batch = new ArrayList<>();
+        List<Long> postIds = new ArrayList<>();
+        List<Counter> flushed = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        counters.forEach((postId, counter) -> {
+            long delta = counter.pending();
+            if (delta > 0) {
+                batch.add(new Object[]{delta, postId});
+                postIds.add(postId);
+                flushed.add(counter);
+                deltas.add(delta);
+            }
+        });
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, batch);
+        } catch (Exception e) {
+            log.error("写回帖子浏览数失败，下次重试: posts={}", batch.size(), e);
+            return;
+        }
+        for (int i = 0; i < flushed.size(); i++) {
+            flushed.get(i).flushed += deltas.get(i);
+            // 写回期间没有新的浏览时移除计数器，之后再被浏览会重新创建
+            counters.computeIfPresent(postIds.get(i), (id, counter) -> counter.pending() == 0 ? null : counter);
+        }
+        log.debug("写回帖子浏览数: posts={}", batch.size());
+    }
+
+    /**
+     * 停机前写回剩余的增量
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private static final class Counter {
+        private final LongAdder views = new LongAdder();
+
+        /**
+         * 已写回数据库的浏览数，只在flush中修改
+         */
+        private volatile long flushed;
+
+        long pending() {
+            return views.sum() - flushed;
+        }
+    }
+}
@@ -0,0 +1,540 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.util.StoragePaths;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 作业提交包磁盘缓存
+ * 每个作业保留最近一次生成的ZIP以及对应的清单（文件名、大小、修改时间），清单与作业文件夹一致时直接从磁盘输出
+ * 学生提交或撤回后按清单差异对已有ZIP追加/删除条目；更新时整个ZIP会重写一遍，但未变化的条目按原压缩数据拷贝，不重新压缩
+ * 缓存总大小超过上限时按最近使用时间淘汰最久未下载的作业包
+ * @author 31930
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HomeworkBundleCache {
+
+    private static final String BUNDLE_SUFFIX = ".zip";
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * 锁分段数（2的幂）
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    private final HomeworkZipPacker homeworkZipPacker;
+
+    /**
+     * 按作业ID分段的读写锁：写锁用于替换/更新ZIP，读锁只在打开文件时持有
+     * 文件打开后即使被替换，已打开的句柄仍指向旧内容，不影响正在进行的下载
+     * 固定分段数，不随作业数量增长；不同作业偶尔共用一把锁只会多等一次文件打开或替换
+     */
+    private final ReentrantReadWriteLock[] locks = createLocks();
+
+    /**
+     * 同一时间只有一个线程做容量淘汰，其余线程直接跳过
+     */
+    private final ReentrantLock trimLock = new ReentrantLock();
+
+    /**
+     * 缓存目录总大小上限
+     */
+    @Value("${app.bundle-cache.max-size:2GB}")
+    private DataSize maxCacheSize;
+
+    /**
+     * 服务启动时间，早于它的临时文件是上次运行中断遗留的
+     */
+    private final long startedAt = System.currentTimeMillis();
+
+    /**
+     * 输出作业提交包：缓存命中则直接从磁盘传输，否则边打包边输出并同时写入缓存
+     */
+    public void write(Long homeworkId, Path homeworkFolder, OutputStream outputStream) throws IOException {
+        Map<String, FileStamp> current = scanFolder(homeworkFolder);
+
+        FileChannel cached = openIfFresh(homeworkId, current);
+        if (cached != null) {
+            try (cached) {
+                transfer(cached, outputStream);
+            }
+            touch(homeworkId);
+            log.info("作业提交包命中缓存: homeworkId={}, fileCount={}", homeworkId, current.size());
+            return;
+        }
+
+        buildAndWrite(homeworkId, homeworkFolder, current, outputStream);
+    }
+
+    /**
+     * 作业文件夹发生变化后增量更新已有的缓存包（没有缓存包时不做任何事，等首次下载时再生成）
+     */
+    @Async
+    public void refresh(Long homeworkId, Path homeworkFolder) {
+        Path bundle = bundlePath(homeworkId);
+        if (!Files.exists(bundle)) {
+            return;
+        }
+
+        ReentrantReadWriteLock lock = lockFor(homeworkId);
+        lock.writeLock().lock();
+        try {
+            Map<String, FileStamp> cachedManifest = readManifest(homeworkId);
+            if (cachedManifest == null || !Files.exists(bundle)) {
+                return;
+            }
+            Map<String, FileStamp> current = scanFolder(homeworkFolder);
+            applyChanges(bundle, homeworkFolder, cachedManifest, current);
+            writeManifest(homeworkId, current);
+            log.info("作业提交包缓存已增量更新: homeworkId={}, fileCount={}", homeworkId, current.size());
+        } catch (Exception e) {
+            // 更新失败时丢弃缓存，下次下载重新生成
+            log.warn("增量更新作业提交包缓存失败，丢弃缓存: homeworkId={}, error={}", homeworkId, e.getMessage());
+            evictQuietly(homeworkId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        trimToSize(homeworkId);
+    }
+
+    /**
+     * 清单与当前文件夹一致时打开缓存包
+     */
+    private FileChannel openIfFresh(Long homeworkId, Map<String, FileStamp> current) {
+        ReentrantReadWriteLock lock = lockFor(homeworkId);
+        lock.readLock().lock();
+        try {
+            Map<String, FileStamp> cachedManifest = readManifest(homeworkId);
+            if (!current.equals(cachedManifest)) {
+                return null;
+            }
+            return FileChannel.open(bundlePath(homeworkId), StandardOpenOption.READ);
+        } catch (IOException e) {
+            log.debug("打开作业提交包缓存失败: homeworkId={}, error={}", homeworkId, e.getMessage());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 缓存未命中：打包输出给客户端的同时写入临时文件，完成后替换为缓存包
+     */
+    private void buildAndWrite(Long homeworkId, Path homeworkFolder, Map<String, FileStamp> current,
+                               OutputStream outputStream) throws IOException {
+        List<Path> files = new ArrayList<>(current.size());
+        for (String name : current.keySet()) {
+            files.add(homeworkFolder.resolve(name));
+        }
+
+        Path cacheDir = bundleDir();
+        Files.createDirectories(cacheDir);
+        Path tempFile = Files.createTempFile(cacheDir, homeworkId + "-", TEMP_SUFFIX);
+        TeeOutputStream tee;
+        List<Path> written;
+        boolean completed = false;
+        try {
+            tee = new TeeOutputStream(outputStream, Files.newOutputStream(tempFile));
+            try {
+                written = homeworkZipPacker.pack(files, tee);
+            } finally {
+                tee.closeBranch();
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+
+        if (tee.getBranchFailure() != null) {
+            // 缓存文件写失败（如磁盘已满）不影响本次下载，只是不生成缓存
+            log.warn("写入作业提交包缓存失败，本次不缓存: homeworkId={}, error={}",
+                    homeworkId, tee.getBranchFailure().getMessage());
+            Files.deleteIfExists(tempFile);
+            trimToSize(homeworkId);
+            return;
+        }
+
+        // 清单只记录实际写入ZIP的文件，打包时被跳过的文件下次下载会因清单不一致而重新打包
+        Map<String, FileStamp> manifest = new LinkedHashMap<>();
+        for (Path file : written) {
+            String name = file.getFileName().toString();
+            manifest.put(name, current.get(name));
+        }
+
+        ReentrantReadWriteLock lock = lockFor(homeworkId);
+        lock.writeLock().lock();
+        try {
+            Files.move(tempFile, bundlePath(homeworkId),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeManifest(homeworkId, manifest);
+            log.info("作业提交包缓存已生成: homeworkId={}, fileCount={}", homeworkId, manifest.size());
+        } catch (IOException e) {
+            log.warn("写入作业提交包缓存失败: homeworkId={}, error={}", homeworkId, e.getMessage());
+            Files.deleteIfExists(tempFile);
+            evictQuietly(homeworkId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // 在释放本作业的写锁之后再淘汰，避免两个线程各持一把写锁互相等待
+        trimToSize(homeworkId);
+    }
+
+    /**
+     * 按清单差异更新ZIP：删除已撤回/被覆盖的条目，追加新文件，其余条目原样拷贝
+     * zipfs关闭时会把整个ZIP重写到临时文件再替换，磁盘IO与包大小成正比；省下的只是未变化条目的读取和压缩
+     * zipfs写入的新条目带数据描述符，STORED条目带数据描述符时部分流式解压工具无法识别，
+     * 所以增量追加的条目统一DEFLATE（每次只有一两个新文件，压缩开销可以忽略）
+     */
+    private void applyChanges(Path bundle, Path homeworkFolder,
+                              Map<String, FileStamp> cachedManifest, Map<String, FileStamp> current) throws IOException {
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<String, FileStamp> entry : cachedManifest.entrySet()) {
+            if (!entry.getValue().equals(current.get(entry.getKey()))) {
+                removed.add(entry.getKey());
+            }
+        }
+        List<String> added = new ArrayList<>();
+        for (Map.Entry<String, FileStamp> entry : current.entrySet()) {
+            if (!entry.getValue().equals(cachedManifest.get(entry.getKey()))) {
+                added.add(entry.getKey());
+            }
+        }
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> env = new HashMap<>();
+        env.put("compressionMethod", "DEFLATED");
+        // 新条目先写临时文件，避免大文件整个进内存
+        env.put("useTempFile", Boolean.TRUE);
+        try (FileSystem zipFs = FileSystems.newFileSystem(URI.create("jar:" + bundle.toUri()), env)) {
+            for (String name : removed) {
+                Files.deleteIfExists(zipFs.getPath(name));
+            }
+            for (String name : added) {
+                Files.copy(homeworkFolder.resolve(name), zipFs.getPath(name), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        log.debug("作业提交包增量更新: removed={}, added={}", removed.size(), added.size());
+    }
+
+    /**
+     * 作业被删除等场景下清理缓存
+     */
+    public void evict(Long homeworkId) {
+        ReentrantReadWriteLock lock = lockFor(homeworkId);
+        lock.writeLock().lock();
+        try {
+            evictQuietly(homeworkId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void evictQuietly(Long homeworkId) {
+        try {
+            Files.deleteIfExists(manifestPath(homeworkId));
+            Files.deleteIfExists(bundlePath(homeworkId));
+        } catch (IOException e) {
+            log.warn("删除作业提交包缓存失败: homeworkId={}, error={}", homeworkId, e.getMessage());
+        }
+    }
+
+    /**
+     * 从已打开的缓存包复制到响应流
+     * 响应流不是套接字通道，这里是普通的缓冲拷贝而不是零拷贝；缓存命中省下的是重新读取和压缩作业文件
+     */
+    private void transfer(FileChannel channel, OutputStream outputStream) throws IOException {
+        Channels.newInputStream(channel).transferTo(outputStream);
+        outputStream.flush();
+    }
+
+    /**
+     * 缓存命中时更新修改时间，作为淘汰时的最近使用时间（清单比较的是作业文件夹，不受影响）
+     */
+    private void touch(Long homeworkId) {
+        try {
+            Files.setLastModifiedTime(bundlePath(homeworkId), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.debug("更新作业提交包使用时间失败: homeworkId={}, error={}", homeworkId, e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存总大小超过上限时，按最近使用时间从旧到新淘汰，刚生成/更新的作业包不淘汰
+     */
+    private void trimToSize(Long keepHomeworkId) {
+        if (!trimLock.tryLock()) {
+            return;
+        }
+        try {
+            List<CachedBundle> bundles = new ArrayList<>();
+            long total = 0;
+            try (var stream = Files.list(bundleDir())) {
+                for (Path file : stream.toList()) {
+                    String name = file.getFileName().toString();
+                    if (!name.endsWith(BUNDLE_SUFFIX)) {
+                        continue;
+                    }
+                    try {
+                        Long homeworkId = Long.valueOf(name.substring(0, name.length() - BUNDLE_SUFFIX.length()));
+                        long size = Files.size(file);
+                        bundles.add(new CachedBundle(homeworkId, size, Files.getLastModifiedTime(file).toMillis()));
+                        total += size;
+                    } catch (NumberFormatException | IOException e) {
+                        // 不是缓存包，或者扫描期间被删除
+                        log.debug("跳过作业提交包缓存文件: {}", file);
+                    }
+                }
+            }
+            if (total <= maxCacheSize.toBytes()) {
+                return;
+            }
+
+            bundles.sort(Comparator.comparingLong(CachedBundle::lastUsed));
+            int evicted = 0;
+            for (CachedBundle bundle : bundles) {
+                if (total <= maxCacheSize.toBytes()) {
+                    break;
+                }
+                if (bundle.homeworkId().equals(keepHomeworkId)) {
+                    continue;
+                }
+                evict(bundle.homeworkId());
+                total -= bundle.size();
+                evicted++;
+            }
+            log.info("作业提交包缓存超过上限，已淘汰: count={}, remainingBytes={}", evicted, total);
+        } catch (IOException e) {
+            log.warn("淘汰作业提交包缓存失败: {}", e.getMessage());
+        } finally {
+            trimLock.unlock();
+        }
+    }
+
+    /**
+     * 启动时清理上次运行中断（打包途中客户端断开后进程退出等）遗留的临时文件
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void cleanupStaleTempFiles() {
+        Path cacheDir = bundleDir();
+        if (!Files.isDirectory(cacheDir)) {
+            return;
+        }
+        int removed = 0;
+        try (var stream = Files.list(cacheDir)) {
+            for (Path file : stream.toList()) {
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)
+                        && Files.getLastModifiedTime(file).toMillis() < startedAt) {
+                    Files.deleteIfExists(file);
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("清理作业提交包临时文件失败: {}", e.getMessage());
+        }
+        if (removed > 0) {
+            log.info("清理遗留的作业提交包临时文件: {}个", removed);
+        }
+    }
+
+    /**
+     * 扫描作业文件夹，按文件名排序
+     */
+    private Map<String, FileStamp> scanFolder(Path homeworkFolder) throws IOException {
+        Map<String, FileStamp> result = new LinkedHashMap<>();
+        if (!Files.isDirectory(homeworkFolder)) {
+            log.warn("作业文件夹不存在: {}", homeworkFolder);
+            return result;
+        }
+        List<Path> files;
+        try (var stream = Files.list(homeworkFolder)) {
+            // 跳过正在分片上传的临时文件
+            files = stream.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().endsWith(ChunkedUploadService.PART_SUFFIX))
+                    .sorted().toList();
+        }
+        for (Path file : files) {
+            try {
+                result.put(file.getFileName().toString(),
+                        new FileStamp(Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+            } catch (IOException e) {
+                // 扫描期间被删除
+                log.debug("读取文件属性失败，跳过: {}", file);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, FileStamp> readManifest(Long homeworkId) {
+        Path manifest = manifestPath(homeworkId);
+        if (!Files.exists(manifest)) {
+            return null;
+        }
+        try {
+            Map<String, FileStamp> result = new LinkedHashMap<>();
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length == 3) {
+                    result.put(parts[0], new FileStamp(Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                }
+            }
+            return result;
+        } catch (IOException | NumberFormatException e) {
+            log.warn("读取作业提交包清单失败: homeworkId={}, error={}", homeworkId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeManifest(Long homeworkId, Map<String, FileStamp> manifest) throws IOException {
+        List<String> lines = new ArrayList<>(manifest.size());
+        for (Map.Entry<String, FileStamp> entry : manifest.entrySet()) {
+            lines.add(entry.getKey() + "\t" + entry.getValue().size() + "\t" + entry.getValue().lastModified());
+        }
+        Path manifestFile = manifestPath(homeworkId);
+        Path tempFile = Files.createTempFile(manifestFile.getParent(), homeworkId + "-", TEMP_SUFFIX);
+        Files.write(tempFile, lines, StandardCharsets.UTF_8);
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ReentrantReadWriteLock lockFor(Long homeworkId) {
+        return locks[homeworkId.hashCode() & (LOCK_STRIPES - 1)];
+    }
+
+    private static ReentrantReadWriteLock[] createLocks() {
+        ReentrantReadWriteLock[] result = new ReentrantReadWriteLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            result[i] = new ReentrantReadWriteLock();
+        }
+        return result;
+    }
+
+    private Path bundleDir() {
+        return StoragePaths.getCacheBasePath().resolve("bundles");
+    }
+
+    private Path bundlePath(Long homeworkId) {
+        return bundleDir().resolve(homeworkId + BUNDLE_SUFFIX);
+    }
+
+    private Path manifestPath(Long homeworkId) {
+        return bundleDir().resolve(homeworkId + MANIFEST_SUFFIX);
+    }
+
+    private record FileStamp(long size, long lastModified) {
+    }
+
+    private record CachedBundle(Long homeworkId, long size, long lastUsed) {
+    }
+
+    /**
+     * 同时写入客户端和缓存文件
+     * 缓存文件写失败时关闭并不再写入，记录异常后继续输出给客户端；客户端写失败照常抛出
+     */
+    private static class TeeOutputStream extends FilterOutputStream {
+        private final OutputStream branch;
+        private IOException branchFailure;
+
+        TeeOutputStream(OutputStream out, OutputStream branch) {
+            super(out);
+            this.branch = Objects.requireNonNull(branch);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (branchFailure == null) {
+                try {
+                    branch.write(b);
+                } catch (IOException e) {
+                    failBranch(e);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (branchFailure == null) {
+                try {
+                    branch.write(b, off, len);
+                } catch (IOException e) {
+                    failBranch(e);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            if (branchFailure == null) {
+                try {
+                    branch.flush();
+                } catch (IOException e) {
+                    failBranch(e);
+                }
+            }
+        }
+
+        /**
+         * 关闭缓存文件（不关闭客户端输出流），关闭失败同样视为缓存写入失败
+         */
+        void closeBranch() {
+            try {
+                branch.close();
+            } catch (IOException e) {
+                if (branchFailure == null) {
+                    branchFailure = e;
+                }
+            }
+        }
+
+        IOException getBranchFailure() {
+            return branchFailure;
+        }
+
+        private void failBranch(IOException e) {
+            branchFailure = e;
+            try {
+                branch.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+        }
+    }
+}
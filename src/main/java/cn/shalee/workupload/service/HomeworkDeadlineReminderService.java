@@ -1,24 +1,33 @@
 package cn.shalee.workupload.service;
 
 import cn.shalee.workupload.entity.Homework;
-import cn.shalee.workupload.entity.HomeworkSubmission;
 import cn.shalee.workupload.entity.User;
 import cn.shalee.workupload.repository.HomeworkRepository;
-import cn.shalee.workupload.repository.HomeworkSubmissionRepository;
 import cn.shalee.workupload.repository.UserRepository;
-import cn.shalee.workupload.util.CourseUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 
 /**
- * 作业截止提醒定时任务服务
+ * 作业截止提醒服务
+ * 每个未截止的作业在截止前2小时有一个一次性定时器（TaskScheduler，底层为按触发时间排序的延迟队列），
+ * 启动时从数据库加载，创建、修改、删除作业时同步更新；两次截止之间不再轮询数据库
+ * 发送后记录在作业的deadline_reminder_sent_at上，重启后不会重复发送；停机期间错过的提醒在启动后立即补发（已截止的不再发送）
+ * 多个节点都会加载定时器，重复触发时由发件箱的唯一约束去重
  * @author 31930
  */
 @Slf4j
@@ -26,42 +35,104 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class HomeworkDeadlineReminderService {
     
+    /**
+     * 截止前多久发送提醒（与邮件模板中的文字一致）
+     */
+    private static final Duration REMIND_BEFORE_DEADLINE = Duration.ofHours(2);
+    
     private final HomeworkRepository homeworkRepository;
-    private final HomeworkSubmissionRepository homeworkSubmissionRepository;
     private final UserRepository userRepository;
     private final HomeworkEmailNotificationService emailNotificationService;
+    private final TaskScheduler taskScheduler;
+    
+    private final Map<Long, ScheduledFuture<?>> reminders = new ConcurrentHashMap<>();
     
     /**
-     * 定时检查即将截止的作业并发送提醒
-     * 每小时执行一次
+     * 启动时为所有未截止、未提醒的作业设置定时器
      */
-    @Scheduled(cron = "0 0 * * * ?") // 每小时的0分0秒执行
-    public void checkDeadlineAndSendReminders() {
-        log.info("开始执行作业截止提醒定时任务");
-        
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadReminders() {
+        List<Homework> pending = homeworkRepository.findPendingDeadlineReminders(LocalDateTime.now());
+        pending.forEach(this::doSchedule);
+        log.info("作业截止提醒定时器加载完成: count={}", pending.size());
+    }
+    
+    /**
+     * 作业创建或修改后（重新）设置截止提醒定时器；在事务中调用时等事务提交后再设置
+     */
+    public void schedule(Homework homework) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doSchedule(homework);
+                }
+            });
+        } else {
+            doSchedule(homework);
+        }
+    }
+    
+    /**
+     * 作业删除后取消截止提醒定时器
+     */
+    public void cancel(Long homeworkId) {
+        ScheduledFuture<?> future = reminders.remove(homeworkId);
+        if (future != null) {
+            future.cancel(false);
+            log.info("取消作业截止提醒: homeworkId={}", homeworkId);
+        }
+    }
+    
+    private void doSchedule(Homework homework) {
+        cancel(homework.getId());
+        if (homework.getDeadlineReminderSentAt() != null || homework.getDeadline() == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (!homework.getDeadline().isAfter(now)) {
+            return;
+        }
+        LocalDateTime remindAt = homework.getDeadline().minus(REMIND_BEFORE_DEADLINE);
+        Instant fireTime = (remindAt.isAfter(now) ? remindAt : now).atZone(ZoneId.systemDefault()).toInstant();
+        Long homeworkId = homework.getId();
+        reminders.put(homeworkId, taskScheduler.schedule(() -> fire(homeworkId), fireTime));
+        log.info("设置作业截止提醒: homeworkId={}, deadline={}, remindAt={}", homeworkId, homework.getDeadline(), remindAt);
+    }
+    
+    /**
+     * 定时器触发：重新读取作业，确认仍需提醒后发送
+     */
+    private void fire(Long homeworkId) {
+        reminders.remove(homeworkId);
         try {
-            // 获取2小时内即将截止的作业
+            Homework homework = homeworkRepository.findById(homeworkId).orElse(null);
+            if (homework == null || homework.getDeadlineReminderSentAt() != null) {
+                return;
+            }
             LocalDateTime now = LocalDateTime.now();
-            LocalDateTime twoHoursLater = now.plusHours(2);
-            
-            List<Homework> upcomingDeadlineHomeworks = homeworkRepository.findByDeadlineBetween(now, twoHoursLater);
-            log.info("找到即将截止的作业数量: {}", upcomingDeadlineHomeworks.size());
-            
-            for (Homework homework : upcomingDeadlineHomeworks) {
-                try {
-                    processHomeworkDeadlineReminder(homework);
-                } catch (Exception e) {
-                    log.error("处理作业截止提醒失败: homeworkId={}, error={}", homework.getId(), e.getMessage(), e);
-                }
+            if (!homework.getDeadline().isAfter(now)) {
+                return;
             }
-            
-            log.info("作业截止提醒定时任务执行完成");
-            
+            if (homework.getDeadline().minus(REMIND_BEFORE_DEADLINE).isAfter(now)) {
+                // 截止时间在其他节点上被推迟了
+                doSchedule(homework);
+                return;
+            }
+            sendReminder(homework);
         } catch (Exception e) {
-            log.error("作业截止提醒定时任务执行失败", e);
+            log.error("处理作业截止提醒失败: homeworkId={}, error={}", homeworkId, e.getMessage(), e);
         }
     }
     
+    /**
+     * 先入队再记录已发送：入队失败时不会被标记，入队是幂等的
+     */
+    private void sendReminder(Homework homework) {
+        processHomeworkDeadlineReminder(homework);
+        homeworkRepository.markDeadlineReminderSent(homework.getId());
+    }
+    
     /**
      * 处理单个作业的截止提醒
      */
@@ -69,62 +140,33 @@ public class HomeworkDeadlineReminderService {
         log.info("处理作业截止提醒: homeworkId={}, title={}, courseCode={}, deadline={}", 
                 homework.getId(), homework.getTitle(), homework.getCourseCode(), homework.getDeadline());
         
-        // 获取班级所有学生
-        List<User> allStudents = userRepository.findByClassCodeAndRoleType(homework.getClassCode(), 1);
-        
-        // 先过滤出选了该课程的学生
-        List<User> enrolledStudents = allStudents.stream()
-                .filter(student -> {
-                    Integer studentCourses = student.getCourses();
-                    if (studentCourses == null || studentCourses == 0) {
-                        log.debug("学生未选课，不发送截止提醒: studentId={}", student.getStudentId());
-                        return false;
-                    }
-                    
-                    Integer homeworkCourseCode = homework.getCourseCode();
-                    if (homeworkCourseCode == null || homeworkCourseCode == 0) {
-                        log.debug("作业未指定课程代码，发送给所有学生: homeworkId={}", homework.getId());
-                        return true;
-                    }
-                    
-                    boolean isSelected = CourseUtils.isCourseSelected(studentCourses, homeworkCourseCode);
-                    if (!isSelected) {
-                        log.debug("学生未选择该课程，不发送截止提醒: studentId={}, studentCourses={}, homeworkCourseCode={}", 
-                                student.getStudentId(), studentCourses, homeworkCourseCode);
-                    }
-                    return isSelected;
-                })
-                .collect(Collectors.toList());
+        // 作业未指定课程时提醒所有选了课的学生（掩码全1，等价于courses != 0）
+        Integer courseCode = homework.getCourseCode();
+        int courseMask = courseCode == null || courseCode == 0 ? -1 : courseCode;
         
-        // 获取已提交的学生学号
-        List<HomeworkSubmission> submissions = homeworkSubmissionRepository.findByHomeworkId(homework.getId());
-        Set<String> submittedStudentIds = submissions.stream()
-                .map(HomeworkSubmission::getStudentId)
-                .collect(Collectors.toSet());
+        // 一次反连接查询得到选了该课程且未提交的班级成员，不再加载整个班级和全部提交记录
+        List<User> unsubmittedStudents = userRepository.findUnsubmittedMembers(
+                        homework.getClassCode(), courseMask, homework.getId()).stream()
+                .filter(user -> Integer.valueOf(1).equals(user.getRoleType()))
+                .toList();
         
-        // 筛选出未提交且选了该课程的学生
-        List<User> unsubmittedStudents = enrolledStudents.stream()
-                .filter(student -> !submittedStudentIds.contains(student.getStudentId()))
-                .collect(Collectors.toList());
-        
-        log.info("作业统计: homeworkId={}, 总学生数={}, 选课学生数={}, 已提交={}, 未提交且选课={}", 
-                homework.getId(), allStudents.size(), enrolledStudents.size(), 
-                submittedStudentIds.size(), unsubmittedStudents.size());
+        log.info("作业统计: homeworkId={}, courseCode={}, 未提交且选课={}", 
+                homework.getId(), courseCode, unsubmittedStudents.size());
         
         if (!unsubmittedStudents.isEmpty()) {
-            // 异步发送截止提醒邮件
-            emailNotificationService.sendHomeworkDeadlineNotifications(homework, unsubmittedStudents);
+            // 截止提醒入队，由发件箱发送
+            emailNotificationService.enqueueHomeworkDeadlineNotifications(homework, unsubmittedStudents);
         } else {
             log.info("所有选课学生都已提交作业，无需发送提醒: homeworkId={}", homework.getId());
         }
     }
     
     /**
-     * 手动触发截止提醒（用于测试或管理员手动执行）
+     * 手动触发截止提醒检查（用于测试或管理员手动执行）：从数据库重新加载所有定时器，已到提醒时间的立即发送
      */
     public void manualCheckDeadlineReminders() {
         log.info("手动触发作业截止提醒检查");
-        checkDeadlineAndSendReminders();
+        loadReminders();
     }
     
     /**
@@ -136,6 +178,7 @@ public class HomeworkDeadlineReminderService {
         Homework homework = homeworkRepository.findById(homeworkId)
                 .orElseThrow(() -> new RuntimeException("作业不存在: " + homeworkId));
         
-        processHomeworkDeadlineReminder(homework);
+        cancel(homeworkId);
+        sendReminder(homework);
     }
 }
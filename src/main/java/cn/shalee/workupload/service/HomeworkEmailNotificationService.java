@@ -1,17 +1,27 @@
 package cn.shalee.workupload.service;
 
-import cn.shalee.workupload.entity.EmailNotificationLog;
+import cn.shalee.workupload.entity.EmailOutbox;
 import cn.shalee.workupload.entity.Homework;
 import cn.shalee.workupload.entity.User;
 import cn.shalee.workupload.repository.EmailNotificationLogRepository;
+import cn.shalee.workupload.repository.HomeworkRepository;
 import cn.shalee.workupload.repository.UserRepository;
 import cn.shalee.workupload.util.CourseUtils;
+import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 作业邮件通知服务
@@ -22,16 +32,30 @@ import java.util.List;
 @RequiredArgsConstructor
 public class HomeworkEmailNotificationService {
     
+    /**
+     * 依赖V3迁移创建的uk_email_log_recipient唯一索引；MySQL按从左到右的顺序执行赋值，send_status必须最后更新
+     */
+    private static final String SAVE_EMAIL_LOG_SQL = "INSERT INTO email_notification_log " +
+            "(homework_id, recipient_email, recipient_student_id, email_type, email_subject, email_content, " +
+            "send_status, error_message, send_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "error_message = IF(send_status = 1, error_message, VALUES(error_message)), " +
+            "send_time = IF(send_status = 1, send_time, VALUES(send_time)), " +
+            "send_status = IF(send_status = 1, send_status, VALUES(send_status))";
+    
     private final EmailService emailService;
+    private final MailDispatcher mailDispatcher;
+    private final EmailOutboxService emailOutboxService;
     private final UserRepository userRepository;
+    private final HomeworkRepository homeworkRepository;
     private final EmailNotificationLogRepository emailNotificationLogRepository;
+    private final JdbcTemplate jdbcTemplate;
     
     /**
-     * 异步发送作业发布通知（给选了该课程的班级学生）
+     * 作业发布通知入队（给选了该课程的班级学生），加入调用方创建作业的事务，由EmailOutboxWorker发送
      */
-    @Async
-    public void sendHomeworkPublishedNotifications(Homework homework) {
-        log.info("开始发送作业发布通知: homeworkId={}, classCode={}, courseCode={}", 
+    public void enqueueHomeworkPublishedNotifications(Homework homework) {
+        log.info("作业发布通知入队: homeworkId={}, classCode={}, courseCode={}", 
                 homework.getId(), homework.getClassCode(), homework.getCourseCode());
         
         // 获取班级所有学生 (role_type = 1)
@@ -64,53 +88,14 @@ public class HomeworkEmailNotificationService {
         
         log.info("选了该课程的学生数量: {} / {}", targetStudents.size(), allStudents.size());
         
-        int successCount = 0;
-        int failCount = 0;
-        
-        for (User student : targetStudents) {
-            try {
-                // 检查是否已经发送过（防重复）
-                if (emailNotificationLogRepository.existsByHomeworkIdAndRecipientEmailAndEmailType(
-                        homework.getId(), student.getEmail(), 1)) {
-                    log.info("作业发布通知已发送过，跳过: studentId={}, homeworkId={}", 
-                            student.getStudentId(), homework.getId());
-                    continue;
-                }
-                
-                // 发送邮件
-                emailService.sendHomeworkPublishedNotification(student.getEmail(), student.getRealName(), homework);
-                
-                // 记录发送成功
-                saveEmailLog(homework.getId(), student, 1, "【作业通知】新作业发布提醒", 
-                           "作业发布通知", 1, null);
-                
-                successCount++;
-                log.info("作业发布通知发送成功: studentId={}, email={}", student.getStudentId(), student.getEmail());
-                
-                // 为了避免邮件服务器压力，每发送一封邮件后稍微休息
-                Thread.sleep(100);
-                
-            } catch (Exception e) {
-                log.error("作业发布通知发送失败: studentId={}, email={}, error={}", 
-                        student.getStudentId(), student.getEmail(), e.getMessage());
-                
-                // 记录发送失败
-                saveEmailLog(homework.getId(), student, 1, "【作业通知】新作业发布提醒", 
-                           "作业发布通知", 0, e.getMessage());
-                failCount++;
-            }
-        }
-        
-        log.info("作业发布通知发送完成: homeworkId={}, 目标学生={}, 成功={}, 失败={}", 
-                homework.getId(), targetStudents.size(), successCount, failCount);
+        emailOutboxService.enqueue(homework.getId(), 1, excludeAlreadyNotified(homework.getId(), 1, targetStudents));
     }
     
     /**
-     * 异步发送作业截止提醒（给未提交且选了该课程的学生）
+     * 作业截止提醒入队（给未提交且选了该课程的学生），由EmailOutboxWorker发送
      */
-    @Async
-    public void sendHomeworkDeadlineNotifications(Homework homework, List<User> unsubmittedStudents) {
-        log.info("开始发送作业截止提醒: homeworkId={}, courseCode={}, 未提交学生数量={}", 
+    public void enqueueHomeworkDeadlineNotifications(Homework homework, List<User> unsubmittedStudents) {
+        log.info("作业截止提醒入队: homeworkId={}, courseCode={}, 未提交学生数量={}", 
                 homework.getId(), homework.getCourseCode(), unsubmittedStudents.size());
         
         // 过滤出选了该课程的未提交学生
@@ -139,68 +124,108 @@ public class HomeworkEmailNotificationService {
         
         log.info("选了该课程的未提交学生数量: {} / {}", targetStudents.size(), unsubmittedStudents.size());
         
-        int successCount = 0;
-        int failCount = 0;
+        emailOutboxService.enqueue(homework.getId(), 2, excludeAlreadyNotified(homework.getId(), 2, targetStudents));
+    }
+    
+    /**
+     * 排除发件箱启用前已经发送成功过的收件人（之后的去重由发件箱的唯一约束保证）
+     */
+    private List<User> excludeAlreadyNotified(Long homeworkId, Integer emailType, List<User> students) {
+        Set<String> notified = new HashSet<>(emailNotificationLogRepository.findSentRecipientEmails(homeworkId, emailType));
+        if (notified.isEmpty()) {
+            return students;
+        }
+        return students.stream()
+                .filter(student -> !notified.contains(student.getEmail()))
+                .toList();
+    }
+    
+    /**
+     * 发送一批已认领的发件箱邮件，记录发送日志
+     * @return 发送失败的邮件ID及原因
+     */
+    public Map<Long, String> deliver(List<EmailOutbox> rows) {
+        Map<Long, String> errors = new HashMap<>();
+        Map<Long, Homework> homeworks = new HashMap<>();
+        homeworkRepository.findAllById(rows.stream().map(EmailOutbox::getHomeworkId).distinct().toList())
+                .forEach(homework -> homeworks.put(homework.getId(), homework));
         
-        for (User student : targetStudents) {
+        Map<MimeMessage, EmailOutbox> messageRows = new IdentityHashMap<>();
+        List<MimeMessage> messages = new ArrayList<>();
+        for (EmailOutbox row : rows) {
+            Homework homework = homeworks.get(row.getHomeworkId());
+            if (homework == null) {
+                errors.put(row.getId(), "作业不存在");
+                continue;
+            }
             try {
-                // 检查是否已经发送过截止提醒（防重复）
-                if (emailNotificationLogRepository.existsByHomeworkIdAndRecipientEmailAndEmailType(
-                        homework.getId(), student.getEmail(), 2)) {
-                    log.info("作业截止提醒已发送过，跳过: studentId={}, homeworkId={}", 
-                            student.getStudentId(), homework.getId());
-                    continue;
-                }
-                
-                // 发送邮件
-                emailService.sendHomeworkDeadlineNotification(student.getEmail(), student.getRealName(), homework);
-                
-                // 记录发送成功
-                saveEmailLog(homework.getId(), student, 2, "【作业提醒】作业即将截止", 
-                           "作业截止提醒", 1, null);
-                
-                successCount++;
-                log.info("作业截止提醒发送成功: studentId={}, email={}", student.getStudentId(), student.getEmail());
-                
-                // 为了避免邮件服务器压力，每发送一封邮件后稍微休息
-                Thread.sleep(100);
-                
+                MimeMessage message = row.getEmailType() == 1
+                        ? emailService.createHomeworkPublishedMessage(row.getRecipientEmail(), row.getRecipientName(), homework)
+                        : emailService.createHomeworkDeadlineMessage(row.getRecipientEmail(), row.getRecipientName(), homework);
+                messageRows.put(message, row);
+                messages.add(message);
             } catch (Exception e) {
-                log.error("作业截止提醒发送失败: studentId={}, email={}, error={}", 
-                        student.getStudentId(), student.getEmail(), e.getMessage());
-                
-                // 记录发送失败
-                saveEmailLog(homework.getId(), student, 2, "【作业提醒】作业即将截止", 
-                           "作业截止提醒", 0, e.getMessage());
-                failCount++;
+                errors.put(row.getId(), e.getMessage());
+            }
+        }
+        
+        Map<MimeMessage, Exception> failures = mailDispatcher.dispatch(messages);
+        List<Object[]> emailLogs = new ArrayList<>();
+        for (MimeMessage message : messages) {
+            EmailOutbox row = messageRows.get(message);
+            Exception error = failures.get(message);
+            if (error != null) {
+                errors.put(row.getId(), String.valueOf(error.getMessage()));
+            } else {
+                // 记录发送成功
+                emailLogs.add(emailLogRow(row, 1, null));
+            }
+        }
+        
+        for (EmailOutbox row : rows) {
+            String error = errors.get(row.getId());
+            if (error == null) {
+                continue;
+            }
+            log.error("{}发送失败: studentId={}, email={}, attempts={}, error={}", 
+                    contentOf(row.getEmailType()), row.getRecipientStudentId(), row.getRecipientEmail(), row.getAttempts(), error);
+            if (emailOutboxService.isFinalAttempt(row)) {
+                // 不再重试时记录发送失败
+                emailLogs.add(emailLogRow(row, 0, error));
             }
         }
+        saveEmailLogs(emailLogs);
         
-        log.info("作业截止提醒发送完成: homeworkId={}, 目标学生={}, 成功={}, 失败={}", 
-                homework.getId(), targetStudents.size(), successCount, failCount);
+        log.info("发件箱邮件发送完成: total={}, 成功={}, 失败={}", rows.size(), rows.size() - errors.size(), errors.size());
+        return errors;
+    }
+    
+    private static String subjectOf(Integer emailType) {
+        return emailType == 1 ? "【作业通知】新作业发布提醒" : "【作业提醒】作业即将截止";
+    }
+    
+    private static String contentOf(Integer emailType) {
+        return emailType == 1 ? "作业发布通知" : "作业截止提醒";
+    }
+    
+    private Object[] emailLogRow(EmailOutbox row, Integer sendStatus, String errorMessage) {
+        return new Object[]{row.getHomeworkId(), row.getRecipientEmail(), row.getRecipientStudentId(), row.getEmailType(),
+                subjectOf(row.getEmailType()), contentOf(row.getEmailType()), sendStatus, errorMessage,
+                Timestamp.valueOf(LocalDateTime.now())};
     }
     
     /**
-     * 保存邮件发送记录
+     * 批量保存邮件发送记录（一次批量写入）
+     * 同一作业、类型、收件人只保留一条记录，已成功的记录不会被之后的失败覆盖
      */
-    private void saveEmailLog(Long homeworkId, User recipient, Integer emailType, String subject, 
-                             String content, Integer sendStatus, String errorMessage) {
+    private void saveEmailLogs(List<Object[]> emailLogs) {
+        if (emailLogs.isEmpty()) {
+            return;
+        }
         try {
-            EmailNotificationLog log = EmailNotificationLog.builder()
-                    .homeworkId(homeworkId)
-                    .recipientEmail(recipient.getEmail())
-                    .recipientStudentId(recipient.getStudentId())
-                    .emailType(emailType)
-                    .emailSubject(subject)
-                    .emailContent(content)
-                    .sendStatus(sendStatus)
-                    .errorMessage(errorMessage)
-                    .build();
-            
-            emailNotificationLogRepository.save(log);
+            jdbcTemplate.batchUpdate(SAVE_EMAIL_LOG_SQL, emailLogs);
         } catch (Exception e) {
-            log.error("保存邮件发送记录失败: homeworkId={}, recipientEmail={}, error={}", 
-                    homeworkId, recipient.getEmail(), e.getMessage());
+            log.error("保存邮件发送记录失败: count={}, error={}", emailLogs.size(), e.getMessage());
         }
     }
 }
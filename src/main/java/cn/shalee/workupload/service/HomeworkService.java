@@ -1,6 +1,7 @@
 package cn.shalee.workupload.service;
 
 import cn.shalee.workupload.dto.request.CreateHomeworkRequest;
+import cn.shalee.workupload.dto.response.CursorPageResponse;
 import cn.shalee.workupload.dto.response.HomeworkResponse;
 import cn.shalee.workupload.entity.Homework;
 import cn.shalee.workupload.entity.HomeworkLog;
@@ -10,12 +11,14 @@ import cn.shalee.workupload.repository.HomeworkLogRepository;
 import cn.shalee.workupload.repository.HomeworkRepository;
 import cn.shalee.workupload.repository.UserRepository;
 import cn.shalee.workupload.util.CourseUtils;
+import cn.shalee.workupload.util.CursorCodec;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.io.File;
 import java.time.LocalDateTime;
@@ -36,7 +39,12 @@ public class HomeworkService {
     private final UserRepository userRepository;
     private final HomeworkLogRepository homeworkLogRepository;
     private final HomeworkEmailNotificationService emailNotificationService;
+    private final HomeworkBundleCache homeworkBundleCache;
+    private final HomeworkStatsService homeworkStatsService;
+    private final HomeworkDeadlineReminderService deadlineReminderService;
+    private final EmailOutboxService emailOutboxService;
     
+    @Transactional
     public HomeworkResponse createHomework(CreateHomeworkRequest request, String userEmail) {
         log.info("创建作业: title={}, classCode={}, userEmail={}", request.getTitle(), request.getClassCode(), userEmail);
         
@@ -72,8 +80,11 @@ public class HomeworkService {
         // 为班级所有学生创建初始作业日志记录
         createInitialHomeworkLogs(savedHomework);
         
-        // 异步发送作业发布邮件通知
-        emailNotificationService.sendHomeworkPublishedNotifications(savedHomework);
+        // 作业发布邮件通知与作业在同一事务中入队，提交后由发件箱发送
+        emailNotificationService.enqueueHomeworkPublishedNotifications(savedHomework);
+        
+        // 设置截止提醒定时器（事务提交后生效）
+        deadlineReminderService.schedule(savedHomework);
         
         return convertToResponse(savedHomework);
     }
@@ -214,6 +225,48 @@ public class HomeworkService {
         });
     }
     
+    /**
+     * 游标分页获取作业列表（按发布先后倒序，不查询总数），筛选条件与getHomeworkListByUser相同
+     */
+    public CursorPageResponse<HomeworkResponse> getHomeworkListByCursor(String userEmail, String cursor, int pageSize,
+                                                                       String classCode, Integer status, Integer courses) {
+        log.info("游标获取作业列表: userEmail={}, pageSize={}, classCode={}, status={}, courses={}", 
+                userEmail, pageSize, classCode, status, courses);
+        
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new BusinessException("USER-001", "用户不存在"));
+        
+        List<Integer> selectedCourseCodes = null;
+        if (courses != null && courses > 0) {
+            selectedCourseCodes = CourseUtils.parseCourseCodesFromMask(courses);
+        }
+        boolean allCourses = selectedCourseCodes == null || selectedCourseCodes.isEmpty();
+        
+        // 非管理员用户只能查看自己班级的作业
+        String targetClassCode = classCode;
+        if (user.getRoleType() != 0) {
+            targetClassCode = user.getClassCode() != null ? user.getClassCode() : "";
+        }
+        
+        CursorCodec.Cursor position = CursorCodec.decode(cursor, 1);
+        long id = position != null ? position.getLong(0) : Long.MAX_VALUE;
+        
+        // 多取一行用于判断是否还有下一页
+        List<Homework> rows = homeworkRepository.findHomeworkBefore(targetClassCode, status, allCourses,
+                allCourses ? List.of(0) : selectedCourseCodes, id, PageRequest.of(0, pageSize + 1));
+        
+        Map<Integer, Integer> submissionStatusMap = homeworkLogRepository.findByStudentId(user.getStudentId()).stream()
+                .collect(Collectors.toMap(HomeworkLog::getHomeworkId, HomeworkLog::getStatus));
+        
+        List<HomeworkResponse> items = CursorCodec.trim(rows, pageSize).stream().map(homework -> {
+            HomeworkResponse response = convertToResponse(homework);
+            response.setSubmissionStatus(submissionStatusMap.getOrDefault(homework.getId().intValue(), 0));
+            return response;
+        }).collect(Collectors.toList());
+        String nextCursor = CursorCodec.nextCursor(rows, pageSize, last -> CursorCodec.encode(last.getId()));
+        return CursorPageResponse.of(items, nextCursor);
+    }
+    
     /**
      * 向后兼容的方法
      */
@@ -316,6 +369,11 @@ public class HomeworkService {
         Homework updatedHomework = homeworkRepository.save(homework);
         log.info("作业更新成功: id={}", updatedHomework.getId());
         
+        if (request.getDeadline() != null) {
+            // 截止时间可能变化，重新设置截止提醒定时器
+            deadlineReminderService.schedule(updatedHomework);
+        }
+        
         return convertToResponse(updatedHomework);
     }
     
@@ -353,6 +411,10 @@ public class HomeworkService {
         
         // 删除作业文件夹
         deleteHomeworkFolder(homework);
+        homeworkBundleCache.evict(homework.getId());
+        homeworkStatsService.evict(homework.getId());
+        deadlineReminderService.cancel(homework.getId());
+        emailOutboxService.cancelForHomework(homework.getId());
         
         // 删除作业相关的日志记录
         deleteHomeworkLogs(homework.getId().intValue());
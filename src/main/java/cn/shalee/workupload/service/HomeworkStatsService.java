@@ -0,0 +1,132 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.dto.response.HomeworkStatsResponse;
+import cn.shalee.workupload.entity.Homework;
+import cn.shalee.workupload.repository.HomeworkSubmissionRepository;
+import cn.shalee.workupload.repository.HomeworkSubmissionRepository.ClassStatsRow;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 作业统计
+ * 一次GROUP BY查询得到各班级的提交数、按时/补交数、评分数、平均分和分数段分布，结果按作业缓存；
+ * 提交、评分、撤回时失效，看板频繁刷新不再查库
+ * @author 31930
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HomeworkStatsService {
+
+    /**
+     * 兜底过期时间：多节点部署时其他节点上的变更最多延迟这么久可见
+     */
+    private static final Duration TTL = Duration.ofSeconds(30);
+
+    private static final String[] HISTOGRAM_BUCKETS = {"<60%", "60-70%", "70-80%", "80-90%", ">=90%"};
+
+    private final HomeworkSubmissionRepository homeworkSubmissionRepository;
+
+    private final Cache<Long, HomeworkStatsResponse> cache = Caffeine.newBuilder()
+            .expireAfterWrite(TTL)
+            .maximumSize(1_000)
+            .build();
+
+    /**
+     * 获取作业统计（汇总和各班级）
+     */
+    public HomeworkStatsResponse getStats(Homework homework) {
+        return cache.get(homework.getId(), id -> compute(homework));
+    }
+
+    /**
+     * 获取某个班级的作业统计
+     */
+    public HomeworkStatsResponse getClassStats(Homework homework, String classCode) {
+        return getStats(homework).getClasses().stream()
+                .filter(stats -> stats.getClassCode().equals(classCode))
+                .findFirst()
+                .orElseGet(() -> emptyStats(classCode));
+    }
+
+    /**
+     * 提交、评分、撤回后使统计失效
+     */
+    public void evict(Long homeworkId) {
+        cache.invalidate(homeworkId);
+    }
+
+    private HomeworkStatsResponse compute(Homework homework) {
+        BigDecimal fullScore = BigDecimal.valueOf(homework.getTotalScore() != null ? homework.getTotalScore() : 100);
+        List<ClassStatsRow> rows = homeworkSubmissionRepository.aggregateStatsByClass(homework.getId(),
+                percentOf(fullScore, 60), percentOf(fullScore, 70), percentOf(fullScore, 80), percentOf(fullScore, 90));
+
+        List<HomeworkStatsResponse> classes = new ArrayList<>();
+        long total = 0, onTime = 0, late = 0, graded = 0;
+        long[] histogram = new long[HISTOGRAM_BUCKETS.length];
+        BigDecimal scoreSum = BigDecimal.ZERO;
+        for (ClassStatsRow row : rows) {
+            long[] classHistogram = {
+                    value(row.getBelow60()), value(row.getFrom60()), value(row.getFrom70()),
+                    value(row.getFrom80()), value(row.getFrom90())
+            };
+            BigDecimal classScoreSum = row.getScoreSum() != null ? row.getScoreSum() : BigDecimal.ZERO;
+            classes.add(buildStats(row.getClassCode(), value(row.getTotal()), value(row.getOnTime()),
+                    value(row.getLate()), value(row.getGraded()), classScoreSum, classHistogram));
+
+            total += value(row.getTotal());
+            onTime += value(row.getOnTime());
+            late += value(row.getLate());
+            graded += value(row.getGraded());
+            scoreSum = scoreSum.add(classScoreSum);
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += classHistogram[i];
+            }
+        }
+
+        HomeworkStatsResponse stats = buildStats(null, total, onTime, late, graded, scoreSum, histogram);
+        stats.setClasses(classes);
+        log.debug("计算作业统计: homeworkId={}, classes={}, total={}", homework.getId(), classes.size(), total);
+        return stats;
+    }
+
+    private HomeworkStatsResponse buildStats(String classCode, long total, long onTime, long late, long graded,
+                                             BigDecimal scoreSum, long[] histogram) {
+        Map<String, Long> scoreHistogram = new LinkedHashMap<>();
+        for (int i = 0; i < HISTOGRAM_BUCKETS.length; i++) {
+            scoreHistogram.put(HISTOGRAM_BUCKETS[i], histogram[i]);
+        }
+        return HomeworkStatsResponse.builder()
+                .classCode(classCode)
+                .total(total)
+                .onTime(onTime)
+                .late(late)
+                .graded(graded)
+                .averageScore(graded > 0 ? scoreSum.divide(BigDecimal.valueOf(graded), 2, RoundingMode.HALF_UP) : null)
+                .scoreHistogram(scoreHistogram)
+                .build();
+    }
+
+    private HomeworkStatsResponse emptyStats(String classCode) {
+        return buildStats(classCode, 0, 0, 0, 0, BigDecimal.ZERO, new long[HISTOGRAM_BUCKETS.length]);
+    }
+
+    private static BigDecimal percentOf(BigDecimal fullScore, int percent) {
+        return fullScore.multiply(BigDecimal.valueOf(percent)).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+    }
+
+    private static long value(Long value) {
+        return value != null ? value : 0;
+    }
+}
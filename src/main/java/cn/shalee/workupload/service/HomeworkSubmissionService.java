@@ -2,6 +2,8 @@ package cn.shalee.workupload.service;
 
 import cn.shalee.workupload.dto.request.GradeHomeworkRequest;
 import cn.shalee.workupload.dto.request.SubmitHomeworkRequest;
+import cn.shalee.workupload.dto.response.CursorPageResponse;
+import cn.shalee.workupload.dto.response.HomeworkStatsResponse;
 import cn.shalee.workupload.dto.response.HomeworkSubmissionResponse;
 import cn.shalee.workupload.dto.response.SubmissionRecordResponse;
 import cn.shalee.workupload.dto.response.UnsubmittedMemberResponse;
@@ -15,25 +17,31 @@ import cn.shalee.workupload.repository.HomeworkLogRepository;
 import cn.shalee.workupload.repository.HomeworkRepository;
 import cn.shalee.workupload.repository.HomeworkSubmissionRepository;
 import cn.shalee.workupload.repository.UserRepository;
-import cn.shalee.workupload.util.CourseUtils;
+import cn.shalee.workupload.util.CursorCodec;
 import cn.shalee.workupload.util.StoragePaths;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 作业提交业务逻辑服务
@@ -48,6 +56,8 @@ public class HomeworkSubmissionService {
     private final HomeworkRepository homeworkRepository;
     private final UserRepository userRepository;
     private final HomeworkLogRepository homeworkLogRepository;
+    private final HomeworkBundleCache homeworkBundleCache;
+    private final HomeworkStatsService homeworkStatsService;
     
     /**
      * 提交作业
@@ -108,6 +118,12 @@ public class HomeworkSubmissionService {
             log.info("创建作业提交记录: submissionId={}, studentId={}", savedSubmission.getId(), user.getStudentId());
         }
         
+        // 还没有首位提交时登记为首位（条件更新，并发提交只有一个成功）
+        if (homework.getFirstSubmissionId() == null
+                && homeworkRepository.claimFirstSubmission(homework.getId(), savedSubmission.getId()) == 1) {
+            log.info("首位提交: homeworkId={}, submissionId={}", homework.getId(), savedSubmission.getId());
+        }
+        
         // 记录作业提交日志（使用saveOrUpdate逻辑）
         Optional<HomeworkLog> existingLog = homeworkLogRepository.findByHomeworkIdAndStudentId(request.getHomeworkId().intValue(), user.getStudentId());
         HomeworkLog homeworkLog;
@@ -133,9 +149,28 @@ public class HomeworkSubmissionService {
         homeworkLogRepository.save(homeworkLog);
         log.info("作业提交日志记录成功: homeworkId={}, studentId={}", request.getHomeworkId(), user.getStudentId());
         
+        // 异步增量更新已有的作业提交包缓存（在此之前的下载会发现清单不一致，直接重新打包）
+        homeworkBundleCache.refresh(homework.getId(), resolveHomeworkFolder(homework));
+        homeworkStatsService.evict(homework.getId());
+        
         return convertToResponse(savedSubmission, user, homework);
     }
     
+    /**
+     * 启动时为历史作业补全首位提交记录
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillFirstSubmissions() {
+        try {
+            int updated = homeworkRepository.backfillFirstSubmissions();
+            if (updated > 0) {
+                log.info("补全作业首位提交记录: {}个作业", updated);
+            }
+        } catch (Exception e) {
+            log.error("补全作业首位提交记录失败", e);
+        }
+    }
+    
     /**
      * 获取我的作业提交列表
      */
@@ -281,6 +316,7 @@ public class HomeworkSubmissionService {
         
         HomeworkSubmission updatedSubmission = homeworkSubmissionRepository.save(submission);
         log.info("作业批改成功: submissionId={}, score={}", submissionId, request.getScore());
+        homeworkStatsService.evict(submission.getHomeworkId());
         
         User student = userRepository.findByStudentId(submission.getStudentId()).orElse(null);
         Homework homework = homeworkRepository.findById(submission.getHomeworkId()).orElse(null);
@@ -290,7 +326,7 @@ public class HomeworkSubmissionService {
     /**
      * 获取班级作业统计信息
      */
-    public Object getHomeworkStats(Long homeworkId, String userEmail) {
+    public HomeworkStatsResponse getHomeworkStats(Long homeworkId, String userEmail) {
         log.info("获取作业统计信息: homeworkId={}, userEmail={}", homeworkId, userEmail);
         
         // 获取用户信息
@@ -306,29 +342,22 @@ public class HomeworkSubmissionService {
         Homework homework = homeworkRepository.findById(homeworkId)
                 .orElseThrow(() -> new BusinessException("HOMEWORK-001", "作业不存在"));
         
-        // 获取统计信息
-        long totalSubmissions;
-        long onTimeSubmissions;
-        long lateSubmissions;
-
         if (user.getRoleType() == 2) {
             // 学委只能查看本班级统计
-            totalSubmissions = homeworkSubmissionRepository.countByHomeworkIdAndClassCode(homeworkId, user.getClassCode());
-            onTimeSubmissions = homeworkSubmissionRepository.findByHomeworkIdAndSubmissionStatus(homeworkId, 0).size();
-            lateSubmissions = homeworkSubmissionRepository.findByHomeworkIdAndSubmissionStatus(homeworkId, 1).size();
-        } else {
-            // 管理员查看所有统计
-            totalSubmissions = homeworkSubmissionRepository.countByHomeworkId(homeworkId);
-            onTimeSubmissions = homeworkSubmissionRepository.findByHomeworkIdAndSubmissionStatus(homeworkId, 0).size();
-            lateSubmissions = homeworkSubmissionRepository.findByHomeworkIdAndSubmissionStatus(homeworkId, 1).size();
+            HomeworkStatsResponse classStats = homeworkStatsService.getClassStats(homework, user.getClassCode());
+            return HomeworkStatsResponse.builder()
+                    .total(classStats.getTotal())
+                    .onTime(classStats.getOnTime())
+                    .late(classStats.getLate())
+                    .graded(classStats.getGraded())
+                    .averageScore(classStats.getAverageScore())
+                    .scoreHistogram(classStats.getScoreHistogram())
+                    .classes(List.of(classStats))
+                    .build();
         }
-
-        return new Object() {
-            public final long total = totalSubmissions;
-            public final long onTime = onTimeSubmissions;
-            public final long late = lateSubmissions;
-            public final long graded = totalSubmissions; // 简化处理，实际应该统计已批改的数量
-        };
+        
+        // 管理员查看所有统计
+        return homeworkStatsService.getStats(homework);
     }
     
     /**
@@ -372,9 +401,10 @@ public class HomeworkSubmissionService {
     }
     
     /**
-     * 下载作业提交包
+     * 校验下载权限并定位作业提交文件夹
+     * 权限校验必须在响应开始写出之前完成，所以与ZIP写出拆成两步
      */
-    public byte[] downloadHomeworkSubmissions(Long homeworkId, String userEmail) throws IOException {
+    public Path resolveHomeworkSubmissionsFolder(Long homeworkId, String userEmail) {
         log.info("下载作业提交包: homeworkId={}, userEmail={}", homeworkId, userEmail);
         
         // 获取用户信息
@@ -390,62 +420,45 @@ public class HomeworkSubmissionService {
         Homework homework = homeworkRepository.findById(homeworkId)
                 .orElseThrow(() -> new BusinessException("HOMEWORK-001", "作业不存在"));
         
-        // 获取提交记录
-        List<HomeworkSubmission> submissions;
+        // 统计提交记录
+        long submissionCount;
         if (user.getRoleType() == 2) {
             // 学委只能下载本班级的提交
-            submissions = homeworkSubmissionRepository.findByHomeworkIdAndClassCode(homeworkId, user.getClassCode());
+            submissionCount = homeworkSubmissionRepository.countByHomeworkIdAndClassCode(homeworkId, user.getClassCode());
         } else {
             // 管理员下载所有提交
-            submissions = homeworkSubmissionRepository.findByHomeworkId(homeworkId);
+            submissionCount = homeworkSubmissionRepository.countByHomeworkId(homeworkId);
         }
         
-        if (submissions.isEmpty()) {
+        if (submissionCount == 0) {
             throw new BusinessException("SUBMISSION-003", "没有找到作业提交记录");
         }
         
-        // 创建临时ZIP文件
-        Path tempZipPath = Files.createTempFile("homework_submissions_", ".zip");
-        
-        try (ZipOutputStream zipOut = new ZipOutputStream(Files.newOutputStream(tempZipPath))) {
-            // 直接遍历作业文件夹下的所有文件
-            String timestamp = homework.getPublishTime().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-            String folderName = homework.getClassCode() + "-" + homework.getTitle() + "-" + timestamp;
-            folderName = folderName.replaceAll("[\\\\/:*?\"<>|]", "_");
-            
-            Path homeworkFolder = StoragePaths.getUploadsBasePath().resolve("homework").resolve(folderName);
-            
-            if (Files.exists(homeworkFolder) && Files.isDirectory(homeworkFolder)) {
-                try (var files = Files.list(homeworkFolder)) {
-                    files.filter(Files::isRegularFile)
-                         .forEach(filePath -> {
-                             try {
-                                 String fileName = filePath.getFileName().toString();
-                                 ZipEntry zipEntry = new ZipEntry(fileName);
-                                 zipOut.putNextEntry(zipEntry);
-                                 Files.copy(filePath, zipOut);
-                                 zipOut.closeEntry();
-                                 log.info("添加文件到ZIP: fileName={}", fileName);
-                             } catch (IOException e) {
-                                 log.error("添加文件到ZIP失败: {}", filePath, e);
-                             }
-                         });
-                }
-            } else {
-                log.warn("作业文件夹不存在: {}", homeworkFolder);
-            }
-        }
-        
-        // 读取ZIP文件内容
-        byte[] zipContent = Files.readAllBytes(tempZipPath);
+        return resolveHomeworkFolder(homework);
+    }
+    
+    /**
+     * 作业文件夹：uploads/homework/{班级代码}-{作业标题}-{发布日期}
+     */
+    public Path resolveHomeworkFolder(Homework homework) {
+        String timestamp = homework.getPublishTime().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+        String folderName = homework.getClassCode() + "-" + homework.getTitle() + "-" + timestamp;
+        folderName = folderName.replaceAll("[\\\\/:*?\"<>|]", "_");
         
-        // 删除临时文件
-        Files.delete(tempZipPath);
+        return StoragePaths.getUploadsBasePath().resolve("homework").resolve(folderName);
+    }
+    
+    /**
+     * 将作业文件夹打包为ZIP并直接写入输出流
+     * 文件夹内容没有变化时直接输出磁盘上缓存的压缩包，否则边读边压边写，同时生成缓存
+     */
+    public void writeHomeworkSubmissionsZip(Long homeworkId, Path homeworkFolder, OutputStream outputStream) throws IOException {
+        long startTime = System.currentTimeMillis();
         
-        log.info("作业提交包下载完成: homeworkId={}, fileCount={}, size={} bytes", 
-                homeworkId, submissions.size(), zipContent.length);
+        homeworkBundleCache.write(homeworkId, homeworkFolder, outputStream);
         
-        return zipContent;
+        log.info("作业提交包下载完成: folder={}, cost={}ms", 
+                homeworkFolder.getFileName(), System.currentTimeMillis() - startTime);
     }
     
     /**
@@ -515,46 +528,17 @@ public class HomeworkSubmissionService {
             throw new BusinessException("PERMISSION-002", "只能查看本班级的作业");
         }
         
-        // 获取班级所有成员
-        List<User> classMembers = userRepository.findByClassCode(homework.getClassCode());
-        
-        // 根据作业的课程代码筛选出选了该课程的学生
-        Integer homeworkCourseCode = homework.getCourseCode();
-        List<User> eligibleMembers = classMembers.stream()
-                .filter(member -> {
-                    Integer studentCourses = member.getCourses();
-                    // 使用CourseUtils判断学生是否选了该课程
-                    return studentCourses != null && 
-                           CourseUtils.isCourseSelected(studentCourses, homeworkCourseCode);
-                })
-                .toList();
-        
-        log.info("班级成员筛选: homeworkId={}, courseCode={}, totalMembers={}, eligibleMembers={}", 
-                homeworkId, homeworkCourseCode, classMembers.size(), eligibleMembers.size());
-        
-        // 获取所有作业日志记录
-        List<HomeworkLog> allLogs = homeworkLogRepository.findByHomeworkId(homeworkId.intValue());
-        
-        // 过滤出未提交的成员：
-        // 1. 在homework_log表中没有记录的成员
-        // 2. 在homework_log表中status为0的成员
-        List<String> submittedStudentIds = allLogs.stream()
-                .filter(log -> log.getStatus() == 1) // 只保留status为1的记录
-                .map(HomeworkLog::getStudentId)
-                .toList();
-        
-        // 从选了该课程的学生中过滤出未提交的成员
-        List<User> unsubmittedMembers = eligibleMembers.stream()
-                .filter(member -> !submittedStudentIds.contains(member.getStudentId()))
-                .toList();
+        // 一次反连接查询得到选了该课程且未提交（homework_log中没有status为1的记录）的成员
+        List<User> unsubmittedMembers = userRepository.findUnsubmittedMembers(
+                homework.getClassCode(), homework.getCourseCode(), homeworkId);
         
         // 转换为响应DTO
         List<UnsubmittedMemberResponse> response = unsubmittedMembers.stream()
                 .map(this::convertToUnsubmittedMemberResponse)
                 .toList();
         
-        log.info("获取作业未交成员列表成功: homeworkId={}, eligibleMembers={}, unsubmittedCount={}, submittedCount={}", 
-                homeworkId, eligibleMembers.size(), response.size(), submittedStudentIds.size());
+        log.info("获取作业未交成员列表成功: homeworkId={}, courseCode={}, unsubmittedCount={}", 
+                homeworkId, homework.getCourseCode(), response.size());
         
         return response;
     }
@@ -608,6 +592,11 @@ public class HomeworkSubmissionService {
         // 删除提交记录
         homeworkSubmissionRepository.delete(submission);
         
+        // 撤回的是首位提交时，顺延给剩余提交中最早的一份
+        if (submission.getId().equals(homework.getFirstSubmissionId())) {
+            homeworkRepository.reassignFirstSubmission(homeworkId, submission.getId());
+        }
+        
         // 更新作业日志状态为未提交
         Optional<HomeworkLog> logOpt = homeworkLogRepository.findByHomeworkIdAndStudentId(homeworkId.intValue(), user.getStudentId());
         if (logOpt.isPresent()) {
@@ -617,6 +606,10 @@ public class HomeworkSubmissionService {
             homeworkLogRepository.save(log);
         }
         
+        // 异步增量更新已有的作业提交包缓存（在此之前的下载会发现清单不一致，直接重新打包）
+        homeworkBundleCache.refresh(homeworkId, resolveHomeworkFolder(homework));
+        homeworkStatsService.evict(homeworkId);
+        
         log.info("撤回作业提交成功: homeworkId={}, studentId={}", homeworkId, user.getStudentId());
     }
     
@@ -662,18 +655,99 @@ public class HomeworkSubmissionService {
             submissionPage = homeworkSubmissionRepository.findAllSubmissions(pageable);
         }
         
-        // 转换为响应DTO
-        return submissionPage.map(submission -> {
-            // 获取用户信息
-            User student = userRepository.findByStudentId(submission.getStudentId()).orElse(null);
-            
-            // 获取作业信息
-            Homework homework = homeworkRepository.findById(submission.getHomeworkId()).orElse(null);
+        List<SubmissionRecordResponse> records = toSubmissionRecords(submissionPage.getContent());
+        return new PageImpl<>(records, submissionPage.getPageable(), submissionPage.getTotalElements());
+    }
+    
+    /**
+     * 游标分页获取班级提交记录（按提交时间倒序，不查询总数）
+     */
+    public CursorPageResponse<SubmissionRecordResponse> getSubmissionRecordsByCursor(String userEmail, String cursor, int pageSize) {
+        log.info("游标获取班级提交记录: userEmail={}, pageSize={}", userEmail, pageSize);
+        
+        User currentUser = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new BusinessException("USER-001", "用户不存在"));
+        
+        // 没有班级代码的用户（主要是管理员）查看所有记录
+        String classCode = currentUser.getClassCode() != null && !currentUser.getClassCode().isEmpty()
+                ? currentUser.getClassCode() : null;
+        
+        CursorCodec.Cursor position = CursorCodec.decode(cursor, 2);
+        LocalDateTime time = position != null ? position.getDateTime(0) : CursorCodec.MAX_TIME;
+        long id = position != null ? position.getLong(1) : Long.MAX_VALUE;
+        
+        // 多取一行用于判断是否还有下一页
+        List<HomeworkSubmission> rows = homeworkSubmissionRepository.findSubmissionsBefore(
+                classCode, time, id, PageRequest.of(0, pageSize + 1));
+        
+        String nextCursor = CursorCodec.nextCursor(rows, pageSize,
+                last -> CursorCodec.encode(last.getSubmissionTime(), last.getId()));
+        return CursorPageResponse.of(toSubmissionRecords(CursorCodec.trim(rows, pageSize)), nextCursor);
+    }
+    
+    /**
+     * 游标分页获取我的作业提交列表（按提交ID倒序，不查询总数）
+     */
+    public CursorPageResponse<HomeworkSubmissionResponse> getMySubmissionsByCursor(String userEmail, String cursor, int pageSize) {
+        log.info("游标获取我的作业提交列表: userEmail={}, pageSize={}", userEmail, pageSize);
+        
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new BusinessException("USER-001", "用户不存在"));
+        
+        CursorCodec.Cursor position = CursorCodec.decode(cursor, 1);
+        long id = position != null ? position.getLong(0) : Long.MAX_VALUE;
+        
+        List<HomeworkSubmission> rows = homeworkSubmissionRepository.findByStudentIdAndIdLessThanOrderByIdDesc(
+                user.getStudentId(), id, PageRequest.of(0, pageSize + 1));
+        List<HomeworkSubmission> submissions = CursorCodec.trim(rows, pageSize);
+        
+        Map<Long, Homework> homeworksById = new HashMap<>();
+        if (!submissions.isEmpty()) {
+            Set<Long> homeworkIds = submissions.stream()
+                    .map(HomeworkSubmission::getHomeworkId)
+                    .collect(Collectors.toSet());
+            for (Homework homework : homeworkRepository.findAllById(homeworkIds)) {
+                homeworksById.put(homework.getId(), homework);
+            }
+        }
+        
+        List<HomeworkSubmissionResponse> items = submissions.stream()
+                .map(submission -> convertToResponse(submission, user, homeworksById.get(submission.getHomeworkId())))
+                .collect(Collectors.toList());
+        String nextCursor = CursorCodec.nextCursor(rows, pageSize, last -> CursorCodec.encode(last.getId()));
+        return CursorPageResponse.of(items, nextCursor);
+    }
+    
+    /**
+     * 转换为提交记录响应DTO
+     * 涉及的用户和作业各一次批量查询，避免逐行查库
+     */
+    private List<SubmissionRecordResponse> toSubmissionRecords(List<HomeworkSubmission> submissions) {
+        Set<String> studentIds = submissions.stream()
+                .map(HomeworkSubmission::getStudentId)
+                .collect(Collectors.toSet());
+        Set<Long> homeworkIds = submissions.stream()
+                .map(HomeworkSubmission::getHomeworkId)
+                .collect(Collectors.toSet());
+        
+        Map<String, User> studentsById = new HashMap<>();
+        Map<Long, Homework> homeworksById = new HashMap<>();
+        if (!submissions.isEmpty()) {
+            for (User student : userRepository.findByStudentIdIn(studentIds)) {
+                studentsById.put(student.getStudentId(), student);
+            }
+            for (Homework homework : homeworkRepository.findAllById(homeworkIds)) {
+                homeworksById.put(homework.getId(), homework);
+            }
+        }
+        
+        return submissions.stream().map(submission -> {
+            User student = studentsById.get(submission.getStudentId());
+            Homework homework = homeworksById.get(submission.getHomeworkId());
             
-            // 判断是否是首位提交用户
-            LocalDateTime earliestSubmissionTime = homeworkSubmissionRepository.findEarliestSubmissionTimeByHomeworkId(submission.getHomeworkId());
-            boolean isFirstSubmission = earliestSubmissionTime != null && 
-                    submission.getSubmissionTime().equals(earliestSubmissionTime);
+            // 判断是否是首位提交用户（提交时登记在作业上）
+            boolean isFirstSubmission = homework != null && 
+                    submission.getId().equals(homework.getFirstSubmissionId());
             
             // 判断是否是补交（submission_status为1）
             boolean isLateSubmission = submission.getSubmissionStatus() == 1;
@@ -691,6 +765,6 @@ public class HomeworkSubmissionService {
                     .classCode(submission.getClassCode())
                     .courseName(homework != null ? homework.getCourseName() : null)
                     .build();
-        });
+        }).collect(Collectors.toList());
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,322 @@
+package cn.shalee.workupload.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 作业打包器
+ * 已压缩格式（docx/pptx/pdf/jpg/mp4等）直接STORED，其余文件DEFLATE
+ * STORED条目需要预先计算CRC，这部分在有界的ForkJoin线程池中并行完成，写出时复用同一个文件句柄按顺序拼接
+ * @author 31930
+ */
+@Slf4j
+@Service
+public class HomeworkZipPacker {
+
+    /**
+     * 内容已压缩的文件扩展名（文件头无法识别时的兜底判断）
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "zip", "rar", "7z", "gz", "tgz", "bz2", "xz",
+            "docx", "xlsx", "pptx", "odt", "ods", "odp", "jar", "apk",
+            "pdf", "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "mp3", "aac", "m4a", "mp4", "mov", "mkv", "avi", "webm");
+
+    /**
+     * 文件头嗅探长度
+     */
+    private static final int SNIFF_LENGTH = 12;
+
+    /**
+     * 读写缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 预计算CRC时最多提前几个文件（每个已算好CRC的文件会保持打开直到写出）
+     */
+    private static final int CHECKSUM_LOOKAHEAD = 8;
+
+    /**
+     * 预计算CRC的线程池，并行度有上限，避免多个下载同时把CPU和磁盘打满
+     */
+    private final ForkJoinPool crcPool = new ForkJoinPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+
+    /**
+     * 将文件列表按顺序打包为ZIP写入输出流（不关闭输出流）
+     * 每个文件只打开一次：已压缩文件在线程池中打开并计算CRC，写出时从同一个文件句柄回到开头再读，
+     * 计算CRC和写出的始终是同一份内容；文件在打包过程中被删除时跳过该文件
+     * @return 实际写入ZIP的文件（按写入顺序，不含被跳过的文件）
+     */
+    public List<Path> pack(List<Path> files, OutputStream outputStream) throws IOException {
+        // 先嗅探类型
+        List<PackEntry> entries = new ArrayList<>(files.size());
+        for (Path file : files) {
+            entries.add(new PackEntry(file, isAlreadyCompressed(file)));
+        }
+
+        List<Future<StoredFile>> checksums = new ArrayList<>(Collections.nCopies(entries.size(), null));
+        Set<FileChannel> openChannels = ConcurrentHashMap.newKeySet();
+        AtomicBoolean finished = new AtomicBoolean();
+        int submitted = 0;
+
+        List<Path> written = new ArrayList<>(entries.size());
+        int storedCount = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                // 已压缩文件最多提前CHECKSUM_LOOKAHEAD个提交预计算CRC，限制同时打开的文件数
+                for (; submitted < entries.size() && submitted <= i + CHECKSUM_LOOKAHEAD; submitted++) {
+                    PackEntry ahead = entries.get(submitted);
+                    if (ahead.stored()) {
+                        checksums.set(submitted, crcPool.submit(() -> openAndChecksum(ahead.file(), openChannels, finished)));
+                    }
+                }
+
+                PackEntry entry = entries.get(i);
+                String fileName = entry.file().getFileName().toString();
+                ZipEntry zipEntry = new ZipEntry(fileName);
+
+                if (entry.stored()) {
+                    StoredFile storedFile = awaitChecksum(entry, checksums.get(i));
+                    if (storedFile == null) {
+                        continue;
+                    }
+                    try (FileChannel channel = storedFile.channel()) {
+                        zipEntry.setMethod(ZipEntry.STORED);
+                        zipEntry.setSize(storedFile.size());
+                        zipEntry.setCompressedSize(storedFile.size());
+                        zipEntry.setCrc(storedFile.crc());
+                        zipOut.putNextEntry(zipEntry);
+                        channel.position(0);
+                        copy(channel, storedFile.size(), zipOut, buffer);
+                    } finally {
+                        openChannels.remove(storedFile.channel());
+                    }
+                    storedCount++;
+                } else {
+                    FileChannel channel;
+                    try {
+                        channel = FileChannel.open(entry.file(), StandardOpenOption.READ);
+                    } catch (NoSuchFileException e) {
+                        log.warn("文件在打包过程中被删除，跳过: {}", entry.file());
+                        continue;
+                    }
+                    try (channel) {
+                        zipOut.putNextEntry(zipEntry);
+                        copy(channel, -1, zipOut, buffer);
+                    }
+                }
+
+                zipOut.closeEntry();
+                written.add(entry.file());
+                log.debug("添加文件到ZIP: fileName={}, method={}", fileName,
+                        zipEntry.getMethod() == ZipEntry.STORED ? "STORED" : "DEFLATED");
+            }
+
+            // 只结束ZIP，不关闭底层输出流
+            zipOut.finish();
+            zipOut.flush();
+        } finally {
+            // 客户端中途断开时，取消尚未完成的CRC计算，并关闭已经打开但还没写出的文件
+            for (Future<StoredFile> checksum : checksums) {
+                if (checksum != null) {
+                    checksum.cancel(true);
+                }
+            }
+            finished.set(true);
+            openChannels.forEach(this::closeQuietly);
+        }
+
+        log.info("ZIP打包完成: fileCount={}, stored={}, deflated={}", written.size(), storedCount, written.size() - storedCount);
+        return written;
+    }
+
+    /**
+     * 判断文件内容是否已压缩：优先看文件头魔数，识别不了再看扩展名
+     */
+    boolean isAlreadyCompressed(Path file) {
+        byte[] header = new byte[SNIFF_LENGTH];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while (length < SNIFF_LENGTH && (read = in.read(header, length, SNIFF_LENGTH - length)) != -1) {
+                length += read;
+            }
+        } catch (IOException e) {
+            log.debug("读取文件头失败，按扩展名判断: {}", file);
+        }
+
+        if (hasCompressedMagic(header, length)) {
+            return true;
+        }
+
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private boolean hasCompressedMagic(byte[] h, int length) {
+        if (length < 4) {
+            return false;
+        }
+        // ZIP容器（docx/xlsx/pptx/zip/jar）
+        if (h[0] == 'P' && h[1] == 'K' && h[2] == 3 && h[3] == 4) {
+            return true;
+        }
+        // PDF
+        if (h[0] == '%' && h[1] == 'P' && h[2] == 'D' && h[3] == 'F') {
+            return true;
+        }
+        // JPEG
+        if ((h[0] & 0xFF) == 0xFF && (h[1] & 0xFF) == 0xD8 && (h[2] & 0xFF) == 0xFF) {
+            return true;
+        }
+        // PNG
+        if ((h[0] & 0xFF) == 0x89 && h[1] == 'P' && h[2] == 'N' && h[3] == 'G') {
+            return true;
+        }
+        // GIF
+        if (h[0] == 'G' && h[1] == 'I' && h[2] == 'F' && h[3] == '8') {
+            return true;
+        }
+        // RAR
+        if (h[0] == 'R' && h[1] == 'a' && h[2] == 'r' && h[3] == '!') {
+            return true;
+        }
+        // 7z
+        if (h[0] == '7' && h[1] == 'z' && (h[2] & 0xFF) == 0xBC && (h[3] & 0xFF) == 0xAF) {
+            return true;
+        }
+        // gzip
+        if ((h[0] & 0xFF) == 0x1F && (h[1] & 0xFF) == 0x8B) {
+            return true;
+        }
+        // MP4/MOV/HEIC（第4~7字节为ftyp）
+        return length >= 8 && h[4] == 'f' && h[5] == 't' && h[6] == 'y' && h[7] == 'p';
+    }
+
+    /**
+     * 打开文件并计算CRC，返回仍然打开的文件句柄供写出时复用
+     * 打包已结束（客户端断开）时关闭刚打开的文件，避免泄漏
+     */
+    private StoredFile openAndChecksum(Path file, Set<FileChannel> openChannels, AtomicBoolean finished) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            openChannels.add(channel);
+            if (finished.get()) {
+                throw new CancellationException("打包已结束");
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long size = 0;
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+                size += read;
+            }
+            return new StoredFile(channel, crc.getValue(), size);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                openChannels.remove(channel);
+                closeQuietly(channel);
+            }
+            throw e instanceof IOException ioe ? new UncheckedIOException(ioe) : (RuntimeException) e;
+        }
+    }
+
+    /**
+     * 从文件句柄当前位置复制到ZIP；limit为STORED条目的预期长度（-1表示读到文件末尾）
+     * 只写出计算CRC时的长度，文件被截断时报错而不是写出与CRC不一致的条目
+     */
+    private void copy(FileChannel channel, long limit, ZipOutputStream zipOut, ByteBuffer buffer) throws IOException {
+        long remaining = limit < 0 ? Long.MAX_VALUE : limit;
+        while (remaining > 0) {
+            buffer.clear();
+            if (remaining < buffer.capacity()) {
+                buffer.limit((int) remaining);
+            }
+            int read = channel.read(buffer);
+            if (read == -1) {
+                if (limit >= 0) {
+                    throw new IOException("文件在打包过程中被截断");
+                }
+                break;
+            }
+            zipOut.write(buffer.array(), 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * 等待CRC计算结果，文件已被删除或读取失败时返回null
+     */
+    private StoredFile awaitChecksum(PackEntry entry, Future<StoredFile> checksum) throws IOException {
+        try {
+            return checksum.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("打包被中断", e);
+        } catch (CancellationException e) {
+            throw new IOException("打包已取消", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked && unchecked.getCause() instanceof NoSuchFileException) {
+                log.warn("文件在打包过程中被删除，跳过: {}", entry.file());
+            } else {
+                log.warn("计算CRC失败，跳过文件: {}, error={}", entry.file(), e.getCause().getMessage());
+            }
+            return null;
+        }
+    }
+
+    private void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("关闭文件失败: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        crcPool.shutdownNow();
+    }
+
+    private record PackEntry(Path file, boolean stored) {
+    }
+
+    private record StoredFile(FileChannel channel, long crc, long size) {
+    }
+}
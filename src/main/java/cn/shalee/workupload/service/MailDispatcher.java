@@ -0,0 +1,123 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.util.TokenBucket;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量邮件发送
+ * 邮件按批次分给固定数量的发送线程，每个批次通过JavaMailSender.send(MimeMessage...)在同一个SMTP连接上连续发送，
+ * 不再每封邮件单独建立连接；所有线程共用一个令牌桶限制总发送速率，代替逐封Thread.sleep
+ * @author 31930
+ */
+@Slf4j
+@Component
+public class MailDispatcher {
+
+    private final JavaMailSender mailSender;
+    private final int batchSize;
+    private final TokenBucket rateLimiter;
+    private final ExecutorService executor;
+
+    public MailDispatcher(JavaMailSender mailSender,
+                          @Value("${app.mail.dispatch.parallelism:3}") int parallelism,
+                          @Value("${app.mail.dispatch.batch-size:20}") int batchSize,
+                          @Value("${app.mail.dispatch.rate-per-second:10}") double ratePerSecond) {
+        this.mailSender = mailSender;
+        this.batchSize = Math.max(1, batchSize);
+        this.rateLimiter = new TokenBucket(ratePerSecond, Math.max(ratePerSecond, this.batchSize));
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "MailDispatch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 发送一组邮件，阻塞到全部发送结束
+     * @return 发送失败的邮件及原因，全部成功时为空
+     */
+    public Map<MimeMessage, Exception> dispatch(List<MimeMessage> messages) {
+        Map<MimeMessage, Exception> failures = Collections.synchronizedMap(new IdentityHashMap<>());
+        if (messages.isEmpty()) {
+            return failures;
+        }
+
+        List<List<MimeMessage>> batches = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < messages.size(); from += batchSize) {
+            List<MimeMessage> batch = messages.subList(from, Math.min(from + batchSize, messages.size()));
+            batches.add(batch);
+            futures.add(executor.submit(() -> sendBatch(batch, failures)));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // 已完成的批次结果已经记录；只有还没跑完（被取消）的批次按失败处理，交给发件箱重试
+                for (int j = 0; j < futures.size(); j++) {
+                    Future<?> future = futures.get(j);
+                    if (!future.isDone() || future.isCancelled()) {
+                        future.cancel(true);
+                        batches.get(j).forEach(message -> failures.putIfAbsent(message, e));
+                    }
+                }
+                break;
+            } catch (ExecutionException e) {
+                // sendBatch只处理邮件异常，其他异常（如邮件内容生成失败）时整批按失败处理，不能被当成已发送
+                log.error("邮件批次发送异常", e.getCause());
+                Exception cause = e.getCause() instanceof Exception exception ? exception : e;
+                batches.get(i).forEach(message -> failures.putIfAbsent(message, cause));
+            }
+        }
+
+        log.info("批量邮件发送完成: total={}, batches={}, failed={}", messages.size(), futures.size(), failures.size());
+        return failures;
+    }
+
+    private void sendBatch(List<MimeMessage> batch, Map<MimeMessage, Exception> failures) {
+        try {
+            rateLimiter.acquire(batch.size());
+            mailSender.send(batch.toArray(new MimeMessage[0]));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.forEach(message -> failures.put(message, e));
+        } catch (MailSendException e) {
+            // 只有部分邮件失败，其余已在同一连接上发送成功
+            if (e.getFailedMessages().isEmpty()) {
+                batch.forEach(message -> failures.put(message, e));
+            } else {
+                e.getFailedMessages().forEach((message, cause) -> failures.put((MimeMessage) message, cause));
+            }
+        } catch (MailException e) {
+            // 连接或认证失败，整批都没有发出
+            log.warn("邮件批次发送失败: size={}, error={}", batch.size(), e.getMessage());
+            batch.forEach(message -> failures.put(message, e));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
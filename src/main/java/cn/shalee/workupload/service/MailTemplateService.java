@@ -0,0 +1,102 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.entity.Homework;
+import cn.shalee.workupload.repository.ClassRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.HtmlUtils;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Pattern;
+
+/**
+ * 作业邮件模板渲染
+ * 模板在 templates/mail 下，由Thymeleaf解析并缓存；同一作业的邮件正文只渲染一次，
+ * 收件人姓名处先渲染成占位符，结果按占位符切分后缓存，给每个收件人生成正文时只拼接转义后的姓名
+ * @author 31930
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MailTemplateService {
+
+    public static final String HOMEWORK_PUBLISHED = "mail/homework-published";
+    public static final String HOMEWORK_DEADLINE = "mail/homework-deadline";
+
+    /**
+     * 收件人姓名占位符，不含HTML需要转义的字符，渲染前后保持不变
+     */
+    private static final String STUDENT_NAME_PLACEHOLDER = "%%STUDENT_NAME%%";
+
+    private static final DateTimeFormatter DEADLINE_FORMATTER = DateTimeFormatter.ofPattern("yyyy年MM月dd日 HH:mm");
+
+    private final ITemplateEngine templateEngine;
+    private final ClassRepository classRepository;
+
+    @Value("${app.mail.system-url:http://101.201.46.184:3000/}")
+    private String systemUrl;
+
+    /**
+     * 作业修改后updatedAt变化，旧的渲染结果不会再被命中，由过期时间回收
+     */
+    private final Cache<RenderKey, String[]> rendered = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofMinutes(30))
+            .maximumSize(200)
+            .build();
+
+    /**
+     * 生成某个收件人的邮件正文
+     */
+    public String render(String template, Homework homework, String studentName) {
+        String[] segments = rendered.get(new RenderKey(template, homework.getId(), homework.getUpdatedAt()),
+                key -> renderSegments(template, homework));
+        String name = HtmlUtils.htmlEscape(studentName != null ? studentName : "");
+
+        int length = name.length() * (segments.length - 1);
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        StringBuilder html = new StringBuilder(length);
+        html.append(segments[0]);
+        for (int i = 1; i < segments.length; i++) {
+            html.append(name).append(segments[i]);
+        }
+        return html.toString();
+    }
+
+    private String[] renderSegments(String template, Homework homework) {
+        Context context = new Context();
+        context.setVariable("studentName", STUDENT_NAME_PLACEHOLDER);
+        context.setVariable("title", homework.getTitle());
+        context.setVariable("deadline", homework.getDeadline() != null ? homework.getDeadline().format(DEADLINE_FORMATTER) : "");
+        context.setVariable("className", resolveClassName(homework.getClassCode()));
+        context.setVariable("totalScore", homework.getTotalScore());
+        String description = homework.getDescription();
+        context.setVariable("description", description != null && !description.trim().isEmpty() ? description : null);
+        context.setVariable("systemUrl", systemUrl);
+
+        String html = templateEngine.process(template, context);
+        log.debug("渲染邮件模板: template={}, homeworkId={}, length={}", template, homework.getId(), html.length());
+        return html.split(Pattern.quote(STUDENT_NAME_PLACEHOLDER), -1);
+    }
+
+    private String resolveClassName(String classCode) {
+        if (classCode == null) {
+            return "";
+        }
+        return classRepository.findByClassCode(classCode)
+                .map(clazz -> clazz.getClassName() != null ? clazz.getClassName() : classCode)
+                .orElse(classCode);
+    }
+
+    private record RenderKey(String template, Long homeworkId, LocalDateTime updatedAt) {
+    }
+}
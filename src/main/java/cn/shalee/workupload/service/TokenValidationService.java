@@ -3,7 +3,11 @@ package cn.shalee.workupload.service;
 import cn.shalee.workupload.entity.User;
 import cn.shalee.workupload.exception.BusinessException;
 import cn.shalee.workupload.repository.UserRepository;
+import cn.shalee.workupload.security.AuthenticatedPrincipalCache;
+import cn.shalee.workupload.security.CustomUserDetails;
 import cn.shalee.workupload.security.JwtTokenProvider;
+import cn.shalee.workupload.security.ParsedToken;
+import cn.shalee.workupload.security.TokenRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -19,20 +23,57 @@ public class TokenValidationService {
     
     private final JwtTokenProvider jwtTokenProvider;
     private final UserRepository userRepository;
+    private final AuthenticatedPrincipalCache principalCache;
+    private final TokenRegistry tokenRegistry;
     
     /**
      * 验证token是否有效（包括单点登录检查）
      */
     public boolean validateToken(String token) {
+        return authenticate(jwtTokenProvider.parseToken(token)) != null;
+    }
+    
+    /**
+     * 根据已解析的token返回对应的用户，无效时返回null
+     * 签名在解析时已校验；单点登录检查以Redis中的token登记表为准，用户信息按tokenId缓存，命中时不查库
+     * 登记表中没有记录（过期或Redis不可用）时回退到数据库中的currentTokenId并回填
+     */
+    public CustomUserDetails authenticate(ParsedToken token) {
         try {
-            // 1. 验证JWT格式和签名
-            if (!jwtTokenProvider.validateToken(token)) {
+            // 1. 解析阶段已验证JWT格式、签名和有效期
+            if (token == null) {
                 log.warn("JWT token格式或签名无效");
-                return false;
+                return null;
+            }
+            
+            String tokenId = token.tokenId();
+            if (tokenId != null) {
+                CustomUserDetails cached = principalCache.get(tokenId);
+                if (cached != null) {
+                    String currentTokenId = tokenRegistry.getCurrentTokenId(cached.getUser().getStudentId());
+                    if (tokenId.equals(currentTokenId)) {
+                        return cached;
+                    }
+                    principalCache.evict(tokenId);
+                    if (currentTokenId != null) {
+                        log.warn("Token已失效（用户在其他设备登录或已下线）: studentId={}, tokenId={}",
+                                cached.getUser().getStudentId(), tokenId);
+                        return null;
+                    }
+                }
             }
             
             // 2. 获取用户信息
-            String subjectValue = jwtTokenProvider.getUsernameFromToken(token); // 可能是学号或邮箱（向后兼容）
+            String subjectValue = token.subject(); // 可能是学号或邮箱（向后兼容）
+            
+            // 登记表中已有其他tokenId时直接拒绝，不查库
+            if (tokenId != null) {
+                String currentTokenId = tokenRegistry.getCurrentTokenId(subjectValue);
+                if (currentTokenId != null && !tokenId.equals(currentTokenId)) {
+                    log.warn("Token已失效（用户在其他设备登录或已下线）: subject={}, tokenId={}", subjectValue, tokenId);
+                    return null;
+                }
+            }
             User user = null;
             
             // 先尝试作为学号查找
@@ -48,34 +89,35 @@ public class TokenValidationService {
             
             if (user == null) {
                 log.warn("Token中的用户不存在: subject={}", subjectValue);
-                return false;
+                return null;
             }
             
             // 3. 检查用户状态
             if (!user.getStatus()) {
                 log.warn("用户账户已被禁用: studentId={}", user.getStudentId());
-                return false;
+                return null;
             }
             
             // 4. 检查单点登录限制
-            String tokenId = jwtTokenProvider.getTokenIdFromToken(token);
             if (tokenId == null) {
                 log.warn("Token中缺少tokenId: studentId={}", user.getStudentId());
-                return false;
+                return null;
             }
             
             if (!tokenId.equals(user.getCurrentTokenId())) {
                 log.warn("Token已失效（用户在其他设备登录）: studentId={}, currentTokenId={}, tokenId={}", 
                         user.getStudentId(), user.getCurrentTokenId(), tokenId);
-                return false;
+                return null;
             }
             
+            tokenRegistry.backfill(user.getStudentId(), tokenId);
+            principalCache.put(tokenId, user);
             log.debug("Token验证成功: studentId={}", user.getStudentId());
-            return true;
+            return new CustomUserDetails(user);
             
         } catch (Exception e) {
             log.error("Token验证异常", e);
-            return false;
+            return null;
         }
     }
     
@@ -86,9 +128,13 @@ public class TokenValidationService {
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new BusinessException("AUTH-001", "用户不存在"));
         
+        String oldTokenId = user.getCurrentTokenId();
         user.setCurrentTokenId(tokenId);
         user.setLastLoginTime(java.time.LocalDateTime.now());
         userRepository.save(user);
+        // 旧设备的token随之失效（落库之后再更新登记表和缓存，避免并发请求把旧数据写回缓存）
+        tokenRegistry.register(user.getStudentId(), tokenId);
+        principalCache.evict(oldTokenId);
         
         log.info("更新用户token ID: email={}, tokenId={}", userEmail, tokenId);
     }
@@ -101,8 +147,11 @@ public class TokenValidationService {
                 .orElse(null);
         
         if (user != null) {
+            String oldTokenId = user.getCurrentTokenId();
             user.setCurrentTokenId(null);
             userRepository.save(user);
+            tokenRegistry.revoke(user.getStudentId());
+            principalCache.evict(oldTokenId);
             log.info("清除用户token ID: email={}", userEmail);
         }
     }
@@ -114,9 +163,20 @@ public class TokenValidationService {
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new BusinessException("AUTH-001", "用户不存在"));
         
+        String oldTokenId = user.getCurrentTokenId();
         user.setCurrentTokenId(null);
         userRepository.save(user);
+        // 通过登记表的发布订阅通知所有节点，立即生效
+        tokenRegistry.revoke(user.getStudentId());
+        principalCache.evict(oldTokenId);
         
         log.info("强制用户下线: email={}", userEmail);
     }
+    
+    /**
+     * 用户认证相关信息（邮箱、状态等）变更后，使缓存的登录态失效
+     */
+    public void evictCachedPrincipal(User user) {
+        principalCache.evict(user.getCurrentTokenId());
+    }
 } 
\ No newline at end of file
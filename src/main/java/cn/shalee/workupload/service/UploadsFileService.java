@@ -0,0 +1,247 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.util.FileDownloads;
+import cn.shalee.workupload.util.StoragePaths;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * /uploads/** 静态文件服务
+ * 小文件（头像、小附件）缓存文件内容在内存中；大文件交给Tomcat sendfile由内核直接发送，不支持时用FileChannel.transferTo
+ * 所有响应带强ETag和Last-Modified，支持304和单段Range
+ * @author 31930
+ */
+@Slf4j
+@Service
+public class UploadsFileService {
+
+    /**
+     * 小于这个大小的文件进入内存缓存
+     */
+    private static final long SMALL_FILE_THRESHOLD = 256 * 1024;
+
+    /**
+     * 内存缓存总大小上限
+     */
+    private static final long CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * 文件名由服务端生成且不会复用（UUID、时间戳）的目录，内容不会变化，可以长期缓存
+     */
+    private static final Set<String> IMMUTABLE_DIRECTORIES = Set.of(
+            "avatar", "homework-attachments", "student-submissions", "general");
+
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE_CACHE_CONTROL = "public, no-cache";
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final Cache<Path, CachedFile> smallFileCache = Caffeine.newBuilder()
+            .maximumWeight(CACHE_MAX_BYTES)
+            .weigher((Path path, CachedFile file) -> file.content().length)
+            .build();
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder sendfileResponses = new LongAdder();
+    private final LongAdder transferResponses = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+
+    /**
+     * 输出 /uploads/** 下的文件
+     */
+    public void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file = resolve(request);
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!attributes.isRegularFile()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long fileSize = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String eTag = FileDownloads.eTag(fileSize, lastModified);
+
+        String fileName = file.getFileName().toString();
+        MediaType contentType = MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, isImmutable(file) ? IMMUTABLE_CACHE_CONTROL : REVALIDATE_CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        // 同时写入ETag和Last-Modified，命中If-None-Match/If-Modified-Since时返回304
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            notModified.increment();
+            return;
+        }
+        response.setContentType(contentType.toString());
+
+        // 只处理单段Range，多段Range按规范可以忽略并返回完整内容
+        long start = 0;
+        long end = fileSize - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && FileDownloads.ifRangeMatches(request, eTag, lastModified)) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(fileSize);
+                    end = ranges.get(0).getRangeEnd(fileSize);
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileSize);
+                }
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        if (fileSize <= SMALL_FILE_THRESHOLD) {
+            writeSmallFile(file, fileSize, lastModified, start, (int) length, response);
+        } else if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // 由Tomcat在响应提交后通过sendfile直接从页缓存发送到套接字
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            sendfileResponses.increment();
+        } else {
+            transfer(file, start, length, response);
+            transferResponses.increment();
+        }
+        bytesServed.add(length);
+    }
+
+    /**
+     * 小文件：从内存缓存输出，文件大小或修改时间变化时重新读取
+     */
+    private void writeSmallFile(Path file, long fileSize, long lastModified, long start, int length,
+                                HttpServletResponse response) throws IOException {
+        CachedFile cached = smallFileCache.getIfPresent(file);
+        if (cached != null && cached.size() == fileSize && cached.lastModified() == lastModified) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+            byte[] content = Files.readAllBytes(file);
+            if (content.length != fileSize) {
+                // 读取期间文件被替换，不缓存这次的内容
+                transfer(file, start, length, response);
+                return;
+            }
+            cached = new CachedFile(content, content.length, lastModified);
+            smallFileCache.put(file, cached);
+        }
+        response.getOutputStream().write(cached.content(), (int) start, length);
+    }
+
+    private void transfer(Path file, long start, long length, HttpServletResponse response) throws IOException {
+        OutputStream outputStream = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * 将请求路径解析到uploads目录下，拒绝目录穿越和隐藏文件（如分片上传的临时文件）
+     */
+    private Path resolve(HttpServletRequest request) {
+        String path = request.getServletPath();
+        if (request.getPathInfo() != null) {
+            path += request.getPathInfo();
+        }
+        if (!path.startsWith("/uploads/")) {
+            return null;
+        }
+        Path base = StoragePaths.getUploadsBasePath().toAbsolutePath().normalize();
+        Path file;
+        try {
+            file = base.resolve(path.substring("/uploads/".length())).normalize();
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (!file.startsWith(base) || file.equals(base) || file.getFileName().toString().startsWith(".")) {
+            return null;
+        }
+        return file;
+    }
+
+    private boolean isImmutable(Path file) {
+        Path relative = StoragePaths.getUploadsBasePath().toAbsolutePath().normalize().relativize(file);
+        return relative.getNameCount() > 1 && IMMUTABLE_DIRECTORIES.contains(relative.getName(0).toString());
+    }
+
+    /**
+     * 文件服务统计
+     */
+    public Map<String, Object> getStats() {
+        long hits = cacheHits.sum();
+        long misses = cacheMisses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cacheHits", hits);
+        stats.put("cacheMisses", misses);
+        stats.put("cacheHitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        stats.put("cachedFiles", smallFileCache.estimatedSize());
+        stats.put("notModified", notModified.sum());
+        stats.put("sendfileResponses", sendfileResponses.sum());
+        stats.put("transferResponses", transferResponses.sum());
+        stats.put("bytesServed", bytesServed.sum());
+        return stats;
+    }
+
+    private record CachedFile(byte[] content, long size, long lastModified) {
+    }
+}
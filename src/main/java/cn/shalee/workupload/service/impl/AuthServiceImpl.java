@@ -206,6 +206,8 @@ public class AuthServiceImpl implements AuthService {
         String oldEmail = user.getEmail();
         user.setEmail(newEmail);
         userRepository.save(user);
+        // 缓存的登录态中用户名是旧邮箱
+        tokenValidationService.evictCachedPrincipal(user);
         
         log.info("用户邮箱更新成功: userId={}, oldEmail={}, newEmail={}", user.getId(), oldEmail, newEmail);
         return newEmail;
@@ -0,0 +1,116 @@
+package cn.shalee.workupload.util;
+
+import cn.shalee.workupload.exception.BusinessException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标分页工具类
+ * 游标记录上一页最后一行的排序键和ID，下一页用 WHERE (排序键, id) < (游标) 直接从索引定位，
+ * 不使用OFFSET也不查询总数；对客户端而言是不透明的字符串
+ */
+public final class CursorCodec {
+    private CursorCodec() {}
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * 第一页使用的排序键上限（MySQL DATETIME的最大值）
+     */
+    public static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    /**
+     * 编码游标
+     */
+    public static String encode(Object... parts) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                builder.append(SEPARATOR);
+            }
+            builder.append(parts[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标，为空时返回null（表示第一页）
+     */
+    public static Cursor decode(String cursor, int expectedParts) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split("\\" + SEPARATOR, -1);
+        } catch (IllegalArgumentException e) {
+            throw invalidCursor();
+        }
+        if (parts.length != expectedParts) {
+            throw invalidCursor();
+        }
+        return new Cursor(parts);
+    }
+
+    /**
+     * 查询时多取一行用于判断是否还有下一页，这里去掉多出的一行
+     */
+    public static <E> List<E> trim(List<E> rows, int pageSize) {
+        return rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+    }
+
+    /**
+     * 下一页游标，没有下一页时返回null
+     * @param cursorOf 由本页最后一行生成游标
+     */
+    public static <E> String nextCursor(List<E> rows, int pageSize, Function<E, String> cursorOf) {
+        return rows.size() > pageSize ? cursorOf.apply(rows.get(pageSize - 1)) : null;
+    }
+
+    private static BusinessException invalidCursor() {
+        return new BusinessException("CURSOR-001", "无效的分页游标");
+    }
+
+    /**
+     * 解码后的游标
+     */
+    public static final class Cursor {
+        private final String[] parts;
+
+        private Cursor(String[] parts) {
+            this.parts = parts;
+        }
+
+        public long getLong(int index) {
+            return parse(index, Long::parseLong);
+        }
+
+        public boolean getBoolean(int index) {
+            return parse(index, value -> {
+                if (!"true".equals(value) && !"false".equals(value)) {
+                    throw new IllegalArgumentException(value);
+                }
+                return Boolean.parseBoolean(value);
+            });
+        }
+
+        public LocalDateTime getDateTime(int index) {
+            return parse(index, LocalDateTime::parse);
+        }
+
+        private <T> T parse(int index, Function<String, T> parser) {
+            try {
+                return parser.apply(parts[index]);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw invalidCursor();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package cn.shalee.workupload.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 文件下载响应
+ * 返回FileSystemResource并带上ETag/Last-Modified，由Spring MVC处理：
+ * If-None-Match/If-Modified-Since命中返回304，Range请求返回206（支持多段），范围无效返回416
+ * Content-Length由消息转换器按实际输出（整个文件或分段）写入，这里不能手动设置
+ */
+public final class FileDownloads {
+    private FileDownloads() {}
+
+    /**
+     * 构建文件下载响应，调用方负责设置Content-Type、Content-Disposition等业务相关的响应头
+     */
+    public static ResponseEntity<?> serve(Path filePath, HttpHeaders headers) throws IOException {
+        long fileSize = Files.size(filePath);
+        long lastModified = Files.getLastModifiedTime(filePath).toMillis();
+        String eTag = eTag(fileSize, lastModified);
+
+        headers.setETag(eTag);
+        headers.setLastModified(lastModified);
+        // 允许浏览器缓存，但每次使用前都要回源校验（校验通过只返回304）
+        headers.setCacheControl("private, no-cache");
+        headers.set("X-Content-Type-Options", "nosniff");
+
+        // If-Range不匹配说明文件已变化，不能续传旧文件的片段，直接返回完整文件
+        if (!ifRangeMatches(currentRequest(), eTag, lastModified)) {
+            headers.setContentLength(fileSize);
+            StreamingResponseBody body = outputStream -> Files.copy(filePath, outputStream);
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(body);
+        }
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(new FileSystemResource(filePath));
+    }
+
+    /**
+     * 强ETag：文件大小 + 修改时间
+     */
+    public static String eTag(long fileSize, long lastModified) {
+        return "\"" + Long.toHexString(fileSize) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    /**
+     * 没有If-Range时视为匹配；ETag需要强匹配，日期需要精确到秒相等
+     */
+    public static boolean ifRangeMatches(HttpServletRequest request, String eTag, long lastModified) {
+        if (request == null) {
+            return true;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null || request.getHeader(HttpHeaders.RANGE) == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(eTag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static HttpServletRequest currentRequest() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            return attributes.getRequest();
+        }
+        return null;
+    }
+}
@@ -13,9 +13,22 @@ public final class StoragePaths {
         File homeDir = home.getDir();
         return new File(homeDir, "uploads").toPath();
     }
-}
-
-
-
 
+    /**
+     * 服务端缓存目录（不在uploads下，不会被静态资源映射公开访问）
+     */
+    public static Path getCacheBasePath() {
+        ApplicationHome home = new ApplicationHome(StoragePaths.class);
+        File homeDir = home.getDir();
+        return new File(homeDir, "cache").toPath();
+    }
 
+    /**
+     * 按内容寻址的文件存储目录（与uploads同级，保证在同一文件系统上可以建立硬链接）
+     */
+    public static Path getBlobsBasePath() {
+        ApplicationHome home = new ApplicationHome(StoragePaths.class);
+        File homeDir = home.getDir();
+        return new File(homeDir, "blobs").toPath();
+    }
+}
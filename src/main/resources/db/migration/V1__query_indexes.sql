@@ -0,0 +1,28 @@
+-- 常用查询的组合索引
+-- forum_like(post_id, student_id) 已有实体声明的唯一约束，不再重复创建
+
+-- 作业列表：按班级、状态筛选；截止提醒按截止时间范围查询
+CREATE INDEX idx_homework_class_status ON homework (class_code, status);
+CREATE INDEX idx_homework_deadline ON homework (deadline);
+
+-- 作业提交：查找某学生的某次提交、按作业（和班级）列出提交、班级提交记录按时间倒序
+CREATE INDEX idx_submission_student_homework ON homework_submission (student_id, homework_id);
+CREATE INDEX idx_submission_homework_class ON homework_submission (homework_id, class_code);
+CREATE INDEX idx_submission_class_time ON homework_submission (class_code, submission_time);
+CREATE INDEX idx_submission_time ON homework_submission (submission_time);
+
+-- 作业提交日志：按作业和学生查找、按学生列出
+CREATE INDEX idx_homework_log_homework_student ON homework_log (homework_id, student_id);
+CREATE INDEX idx_homework_log_student_status ON homework_log (student_id, status);
+
+-- 论坛：主帖列表（置顶+时间、热度两种排序）、回复列表、我的帖子
+CREATE INDEX idx_forum_post_latest ON forum_post (class_code, parent_id, status, is_top, created_at);
+CREATE INDEX idx_forum_post_hot ON forum_post (class_code, parent_id, status, hot_score, created_at);
+CREATE INDEX idx_forum_post_parent ON forum_post (parent_id, status, created_at);
+CREATE INDEX idx_forum_post_student ON forum_post (student_id, status, created_at);
+
+-- 用户：按班级（和角色）列出成员
+CREATE INDEX idx_user_class_role ON user (class_code, role_type);
+
+-- 邮件通知记录：按作业和类型查找、去重检查
+CREATE INDEX idx_email_log_homework_type ON email_notification_log (homework_id, email_type, recipient_email);
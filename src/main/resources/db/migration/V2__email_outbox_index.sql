@@ -0,0 +1,2 @@
+-- 发件箱：发送线程按状态和到期时间认领待发送邮件
+CREATE INDEX idx_email_outbox_due ON email_outbox (status, next_attempt_at);
@@ -0,0 +1,17 @@
+-- 邮件通知记录：同一作业、类型、收件人只保留一条记录（优先保留发送成功的，其次保留最新的）
+-- 要保留的ID放在带GROUP BY的派生表中，MySQL会先物化，允许在DELETE中引用被删除的表；写法同时兼容H2
+DELETE FROM email_notification_log
+ WHERE id NOT IN (
+       SELECT keep_id FROM (
+              SELECT MAX(l.id) AS keep_id
+                FROM email_notification_log l
+               WHERE l.send_status = (
+                     SELECT MAX(k.send_status) FROM email_notification_log k
+                      WHERE k.homework_id = l.homework_id
+                        AND k.email_type = l.email_type
+                        AND k.recipient_email = l.recipient_email)
+               GROUP BY l.homework_id, l.email_type, l.recipient_email) keep_rows);
+
+-- 唯一索引同时用于去重查询，替换V1中的普通索引
+CREATE UNIQUE INDEX uk_email_log_recipient ON email_notification_log (homework_id, email_type, recipient_email);
+DROP INDEX idx_email_log_homework_type ON email_notification_log;
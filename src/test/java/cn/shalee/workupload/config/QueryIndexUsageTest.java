@@ -0,0 +1,271 @@
+package cn.shalee.workupload.config;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 常用查询的索引使用测试
+ * 在H2（MySQL兼容模式）中按实体建表、执行 db/migration 中的全部迁移脚本并写入测试数据，
+ * 然后对各仓库方法对应的SQL执行EXPLAIN，断言执行计划使用了预期的索引而不是全表扫描
+ */
+public class QueryIndexUsageTest {
+
+    private static final String URL =
+            "jdbc:h2:mem:query_index;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER";
+
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2025, 3, 1, 8, 0);
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        dataSource = new SingleConnectionDataSource(URL, true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        String schema = new ClassPathResource("db/query-index-schema.sql").getContentAsString(StandardCharsets.UTF_8);
+        for (String sql : SchemaMigrationRunner.parseStatements(schema)) {
+            jdbcTemplate.execute(sql);
+        }
+        insertTestData();
+
+        SchemaMigrationRunner runner = new SchemaMigrationRunner(jdbcTemplate);
+        ReflectionTestUtils.setField(runner, "enabled", true);
+        runner.afterSingletonsInstantiated();
+
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        dataSource.destroy();
+    }
+
+    static Stream<Arguments> hotQueries() {
+        return Stream.of(
+                // HomeworkSubmissionRepository
+                Arguments.of("findByStudentIdAndHomeworkId",
+                        "SELECT * FROM homework_submission WHERE student_id = '202300000042' AND homework_id = 7",
+                        List.of("idx_submission_student_homework")),
+                Arguments.of("findByHomeworkIdAndClassCode",
+                        "SELECT * FROM homework_submission WHERE homework_id = 7 AND class_code = 'CS07'",
+                        List.of("idx_submission_homework_class")),
+                Arguments.of("findByHomeworkId",
+                        "SELECT * FROM homework_submission WHERE homework_id = 7",
+                        List.of("idx_submission_homework_class")),
+                Arguments.of("aggregateStatsByClass",
+                        "SELECT class_code, COUNT(*), SUM(score) FROM homework_submission WHERE homework_id = 7 GROUP BY class_code",
+                        List.of("idx_submission_homework_class")),
+                Arguments.of("findAllSubmissionsByClassCode",
+                        "SELECT * FROM homework_submission WHERE class_code = 'CS07' ORDER BY submission_time DESC LIMIT 20",
+                        List.of("idx_submission_class_time")),
+                Arguments.of("findSubmissionsBefore",
+                        "SELECT * FROM homework_submission WHERE class_code = 'CS07' " +
+                                "AND (submission_time < TIMESTAMP '2025-03-02 00:00:00' " +
+                                "OR (submission_time = TIMESTAMP '2025-03-02 00:00:00' AND id < 1000)) " +
+                                "ORDER BY submission_time DESC, id DESC LIMIT 20",
+                        List.of("idx_submission_class_time")),
+                Arguments.of("findByStudentIdAndIdLessThanOrderByIdDesc",
+                        "SELECT * FROM homework_submission WHERE student_id = '202300000042' AND id < 1000 ORDER BY id DESC LIMIT 20",
+                        List.of("idx_submission_student_homework")),
+
+                // HomeworkLogRepository
+                Arguments.of("findByHomeworkIdAndStudentId",
+                        "SELECT * FROM homework_log WHERE homework_id = 7 AND student_id = '202300000042'",
+                        List.of("idx_homework_log_homework_student")),
+                Arguments.of("countByHomeworkIdAndStatus",
+                        "SELECT COUNT(*) FROM homework_log WHERE homework_id = 7 AND status = 1",
+                        List.of("idx_homework_log_homework_student")),
+                Arguments.of("findByStudentIdAndStatus",
+                        "SELECT * FROM homework_log WHERE student_id = '202300000042' AND status = 1",
+                        List.of("idx_homework_log_student_status")),
+
+                // HomeworkRepository
+                Arguments.of("findByClassCodeAndStatus",
+                        "SELECT * FROM homework WHERE class_code = 'CS07' AND status = 1 ORDER BY id DESC LIMIT 20",
+                        List.of("idx_homework_class_status")),
+                Arguments.of("findPendingDeadlineReminders",
+                        "SELECT * FROM homework WHERE deadline > TIMESTAMP '2025-04-30 00:00:00' AND deadline_reminder_sent_at IS NULL",
+                        List.of("idx_homework_deadline")),
+
+                // ForumPostRepository
+                Arguments.of("findMainPostsByClassCode",
+                        "SELECT * FROM forum_post WHERE parent_id IS NULL AND class_code = 'CS07' AND status = 1 " +
+                                "ORDER BY is_top DESC, created_at DESC LIMIT 20",
+                        List.of("idx_forum_post_")),
+                Arguments.of("findHotPostsByClassCode",
+                        "SELECT * FROM forum_post WHERE parent_id IS NULL AND class_code = 'CS07' AND status = 1 " +
+                                "ORDER BY hot_score DESC, created_at DESC LIMIT 20",
+                        List.of("idx_forum_post_")),
+                Arguments.of("findByParentIdAndStatusOrderByCreatedAtAsc",
+                        "SELECT * FROM forum_post WHERE parent_id = 5 AND status = 1 ORDER BY created_at",
+                        List.of("idx_forum_post_parent")),
+                Arguments.of("findByStudentIdAndStatusOrderByCreatedAtDesc",
+                        "SELECT * FROM forum_post WHERE student_id = '202300000042' AND status = 1 ORDER BY created_at DESC LIMIT 20",
+                        List.of("idx_forum_post_student")),
+
+                // ForumLikeRepository
+                Arguments.of("deleteLike / existsByPostIdAndStudentId",
+                        "SELECT id FROM forum_like WHERE post_id = 5 AND student_id = '202300000042'",
+                        List.of("uk_forum_like_post_student")),
+                Arguments.of("findLikedPostIds",
+                        "SELECT post_id FROM forum_like WHERE student_id = '202300000042' AND post_id IN (5, 6, 7)",
+                        List.of("uk_forum_like_post_student")),
+
+                // UserRepository（反连接中的位运算条件H2不支持，不影响索引选择，这里省略）
+                Arguments.of("findByClassCodeAndRoleType",
+                        "SELECT * FROM user WHERE class_code = 'CS07' AND role_type = 1",
+                        List.of("idx_user_class_role")),
+                Arguments.of("findUnsubmittedMembers",
+                        "SELECT u.* FROM user u WHERE u.class_code = 'CS07' AND NOT EXISTS (" +
+                                "SELECT 1 FROM homework_log hl WHERE hl.homework_id = 7 " +
+                                "AND hl.student_id = u.student_id AND hl.status = 1)",
+                        List.of("idx_user_class_role", "idx_homework_log_homework_student")),
+
+                // EmailNotificationLogRepository / EmailOutboxRepository
+                Arguments.of("findSentRecipientEmails",
+                        "SELECT recipient_email FROM email_notification_log WHERE homework_id = 7 AND email_type = 1 AND send_status = 1",
+                        List.of("uk_email_log_recipient")),
+                Arguments.of("lockDue（待发送分支）",
+                        "SELECT * FROM email_outbox WHERE status = 0 AND next_attempt_at <= TIMESTAMP '2025-03-01 09:00:00' " +
+                                "ORDER BY next_attempt_at LIMIT 100",
+                        List.of("idx_email_outbox_due")),
+                Arguments.of("cancelByHomeworkId",
+                        "SELECT id FROM email_outbox WHERE homework_id = 7 AND status IN (0, 1)",
+                        List.of("uk_email_outbox_recipient"))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("hotQueries")
+    public void testQueryUsesIndex(String repositoryMethod, String sql, List<String> expectedIndexes) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+        String normalized = plan.toLowerCase(Locale.ROOT);
+
+        assertFalse(normalized.contains("tablescan"), repositoryMethod + " 全表扫描:\n" + plan);
+        for (String index : expectedIndexes) {
+            assertTrue(normalized.contains(index), repositoryMethod + " 没有使用索引 " + index + ":\n" + plan);
+        }
+    }
+
+    @Test
+    public void testMigrationsAreRecorded() {
+        List<Integer> versions = jdbcTemplate.queryForList(
+                "SELECT version FROM schema_migration ORDER BY version", Integer.class);
+        assertEquals(List.of(1, 2, 3), versions);
+    }
+
+    @Test
+    public void testDuplicateEmailLogsAreCollapsed() {
+        // 测试数据中(1, 1, dup@example.com)有三条记录，只保留发送成功的那条
+        List<Integer> statuses = jdbcTemplate.queryForList(
+                "SELECT send_status FROM email_notification_log " +
+                        "WHERE homework_id = 1 AND email_type = 1 AND recipient_email = 'dup@example.com'", Integer.class);
+        assertEquals(List.of(1), statuses);
+
+        Long duplicates = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM (SELECT homework_id FROM email_notification_log " +
+                        "GROUP BY homework_id, email_type, recipient_email HAVING COUNT(*) > 1) d", Long.class);
+        assertEquals(0L, duplicates);
+    }
+
+    /**
+     * 写入足够多的数据，让优化器的代价估算偏向索引
+     */
+    private static void insertTestData() {
+        int classes = 40;
+        int homeworks = 200;
+        int students = 2000;
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= homeworks; i++) {
+            rows.add(new Object[]{classCode(i % classes), 1 << (i % 8), "作业" + i,
+                    timestamp(BASE_TIME.plusHours(i * 6L)), i % 3});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO homework (class_code, course_code, title, deadline, status) " +
+                "VALUES (?, ?, ?, ?, ?)", rows);
+
+        rows.clear();
+        for (int i = 1; i <= students; i++) {
+            rows.add(new Object[]{studentId(i) + "@example.com", studentId(i), classCode(i % classes), 1 + i % 2, 0xFF});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO user (email, student_id, class_code, role_type, courses) " +
+                "VALUES (?, ?, ?, ?, ?)", rows);
+
+        List<Object[]> submissions = new ArrayList<>();
+        List<Object[]> logs = new ArrayList<>();
+        for (int i = 1; i <= 10_000; i++) {
+            int student = 1 + i % students;
+            int homework = 1 + i % homeworks;
+            submissions.add(new Object[]{studentId(student), classCode(student % classes), homework,
+                    timestamp(BASE_TIME.plusMinutes(i)), i % 2});
+            logs.add(new Object[]{homework, studentId(student), i % 2, timestamp(BASE_TIME.plusMinutes(i))});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO homework_submission " +
+                "(student_id, class_code, homework_id, submission_time, submission_status) VALUES (?, ?, ?, ?, ?)", submissions);
+        jdbcTemplate.batchUpdate("INSERT INTO homework_log (homework_id, student_id, status, created_at) " +
+                "VALUES (?, ?, ?, ?)", logs);
+
+        rows.clear();
+        for (int i = 1; i <= 5_000; i++) {
+            Long parentId = i % 4 == 0 ? (long) (i - 1) : null;
+            rows.add(new Object[]{studentId(1 + i % students), classCode(i % classes), parentId,
+                    i % 50 == 0, i % 97, 1, timestamp(BASE_TIME.plusMinutes(i))});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO forum_post " +
+                "(student_id, class_code, parent_id, is_top, hot_score, status, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)", rows);
+
+        rows.clear();
+        for (int i = 1; i <= 5_000; i++) {
+            rows.add(new Object[]{1 + i % 1000, studentId(i), timestamp(BASE_TIME)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO forum_like (post_id, student_id, created_at) VALUES (?, ?, ?)", rows);
+
+        rows.clear();
+        List<Object[]> outbox = new ArrayList<>();
+        for (int i = 1; i <= 5_000; i++) {
+            int homework = 1 + i % homeworks;
+            String email = studentId(i) + "@example.com";
+            rows.add(new Object[]{homework, email, studentId(i), 1 + i % 2, 1});
+            outbox.add(new Object[]{homework, 1 + i % 2, email, i % 4, timestamp(BASE_TIME.plusMinutes(i))});
+        }
+        // 迁移前遗留的重复记录（失败、成功、失败），V3只保留发送成功的一条
+        rows.add(new Object[]{1, "dup@example.com", "202399999999", 1, 0});
+        rows.add(new Object[]{1, "dup@example.com", "202399999999", 1, 1});
+        rows.add(new Object[]{1, "dup@example.com", "202399999999", 1, 0});
+        jdbcTemplate.batchUpdate("INSERT INTO email_notification_log " +
+                "(homework_id, recipient_email, recipient_student_id, email_type, send_status) VALUES (?, ?, ?, ?, ?)", rows);
+        jdbcTemplate.batchUpdate("INSERT INTO email_outbox " +
+                "(homework_id, email_type, recipient_email, status, attempts, next_attempt_at) VALUES (?, ?, ?, ?, 0, ?)", outbox);
+    }
+
+    private static String classCode(int i) {
+        return String.format("CS%02d", i);
+    }
+
+    private static String studentId(int i) {
+        return String.format("2023%08d", i);
+    }
+
+    private static Timestamp timestamp(LocalDateTime time) {
+        return Timestamp.valueOf(time);
+    }
+}
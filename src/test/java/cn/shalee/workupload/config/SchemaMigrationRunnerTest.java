@@ -0,0 +1,47 @@
+package cn.shalee.workupload.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 数据库迁移脚本解析测试
+ */
+public class SchemaMigrationRunnerTest {
+
+    @Test
+    public void testParseStatements() {
+        String script = """
+                -- 注释行
+                CREATE INDEX idx_a ON t (a);
+
+                CREATE INDEX idx_b
+                    ON t (b, c);
+                ALTER TABLE t ADD COLUMN d INT
+                """;
+
+        List<String> statements = SchemaMigrationRunner.parseStatements(script);
+
+        assertEquals(3, statements.size());
+        assertEquals("CREATE INDEX idx_a ON t (a)", statements.get(0));
+        assertEquals("CREATE INDEX idx_b\n    ON t (b, c)", statements.get(1));
+        // 最后一条没有分号也要执行
+        assertEquals("ALTER TABLE t ADD COLUMN d INT", statements.get(2));
+    }
+
+    @Test
+    public void testScriptNameAndChecksum() {
+        SchemaMigrationRunner.MigrationScript script =
+                SchemaMigrationRunner.MigrationScript.of("V12__add_forum_indexes.sql", "CREATE INDEX i ON t (a);");
+
+        assertEquals(12, script.version());
+        assertEquals("add forum indexes", script.description());
+        assertEquals(64, script.checksum().length());
+        assertEquals(List.of("CREATE INDEX i ON t (a)"), script.statements());
+
+        assertThrows(IllegalStateException.class,
+                () -> SchemaMigrationRunner.MigrationScript.of("add_indexes.sql", ""));
+    }
+}
@@ -0,0 +1,57 @@
+package cn.shalee.workupload.security;
+
+import cn.shalee.workupload.entity.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JWT解析测试
+ */
+public class JwtTokenProviderTest {
+
+    private static final String SECRET = "2C1A39094C4E45652EDFF6FE74C5449C";
+
+    private final JwtTokenProvider provider = new JwtTokenProvider(SECRET, 60_000);
+
+    @Test
+    public void testParseTokenReturnsAllClaims() {
+        User user = new User();
+        user.setStudentId("202303013056");
+        user.setRoleType(2);
+
+        String token = provider.generateToken(user);
+        ParsedToken parsed = provider.parseToken(token);
+
+        assertNotNull(parsed);
+        assertEquals("202303013056", parsed.subject());
+        assertEquals(2, parsed.role());
+        assertEquals(provider.getTokenIdFromToken(token), parsed.tokenId());
+        assertTrue(parsed.expiresAt().isAfter(Instant.now()));
+    }
+
+    @Test
+    public void testParseTokenRejectsInvalidTokens() {
+        User user = new User();
+        user.setStudentId("202303013056");
+        user.setRoleType(1);
+
+        String token = provider.generateToken(user);
+        // 篡改签名
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+        assertNull(provider.parseToken(tampered));
+
+        // 其他密钥签发的token
+        JwtTokenProvider other = new JwtTokenProvider("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF", 60_000);
+        assertNull(provider.parseToken(other.generateToken(user)));
+
+        // 已过期
+        JwtTokenProvider expired = new JwtTokenProvider(SECRET, -1_000);
+        assertNull(provider.parseToken(expired.generateToken(user)));
+
+        assertNull(provider.parseToken("not-a-jwt"));
+        assertNull(provider.parseToken(""));
+    }
+}
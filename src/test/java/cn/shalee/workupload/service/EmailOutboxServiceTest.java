@@ -0,0 +1,70 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.entity.EmailOutbox;
+import cn.shalee.workupload.repository.EmailOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 发件箱重试策略测试
+ */
+public class EmailOutboxServiceTest {
+
+    private EmailOutboxRepository emailOutboxRepository;
+    private EmailOutboxService service;
+
+    @BeforeEach
+    public void setUp() {
+        emailOutboxRepository = mock(EmailOutboxRepository.class);
+        service = new EmailOutboxService(emailOutboxRepository, null);
+        ReflectionTestUtils.setField(service, "maxAttempts", 4);
+        ReflectionTestUtils.setField(service, "baseBackoffSeconds", 30L);
+        ReflectionTestUtils.setField(service, "maxBackoffSeconds", 300L);
+    }
+
+    @Test
+    public void testBackoffDoublesUntilCap() {
+        assertEquals(Duration.ofSeconds(30), service.backoff(1));
+        assertEquals(Duration.ofSeconds(60), service.backoff(2));
+        assertEquals(Duration.ofSeconds(120), service.backoff(3));
+        assertEquals(Duration.ofSeconds(300), service.backoff(5));
+        assertEquals(Duration.ofSeconds(300), service.backoff(100));
+    }
+
+    @Test
+    public void testCompleteMarksSentRetriesAndGivesUp() {
+        EmailOutbox sent = row(1L, 1);
+        EmailOutbox retry = row(2L, 2);
+        EmailOutbox exhausted = row(3L, 4);
+
+        service.complete(List.of(sent, retry, exhausted), Map.of(2L, "timeout", 3L, "550 mailbox unavailable"));
+
+        verify(emailOutboxRepository).markSent(eq(List.of(1L)), any(LocalDateTime.class));
+        verify(emailOutboxRepository).reschedule(eq(2L), any(LocalDateTime.class), eq("timeout"));
+        verify(emailOutboxRepository).markFailed(3L, "550 mailbox unavailable");
+        verify(emailOutboxRepository, never()).reschedule(eq(3L), any(), anyString());
+    }
+
+    private EmailOutbox row(Long id, int attempts) {
+        return EmailOutbox.builder()
+                .id(id)
+                .homeworkId(10L)
+                .emailType(1)
+                .recipientEmail("student" + id + "@example.com")
+                .status(EmailOutbox.STATUS_SENDING)
+                .attempts(attempts)
+                .build();
+    }
+}
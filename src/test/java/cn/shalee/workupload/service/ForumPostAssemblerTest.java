@@ -0,0 +1,75 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.dto.response.ForumPostResponse;
+import cn.shalee.workupload.entity.ForumPost;
+import cn.shalee.workupload.entity.User;
+import cn.shalee.workupload.repository.ForumLikeRepository;
+import cn.shalee.workupload.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 帖子响应组装测试：查询次数不随帖子数量增长
+ */
+public class ForumPostAssemblerTest {
+
+    private UserRepository userRepository;
+    private ForumLikeRepository forumLikeRepository;
+    private ForumPostAssembler assembler;
+
+    @BeforeEach
+    public void setUp() {
+        userRepository = mock(UserRepository.class);
+        forumLikeRepository = mock(ForumLikeRepository.class);
+        assembler = new ForumPostAssembler(userRepository, forumLikeRepository, mock(ForumViewCounter.class));
+    }
+
+    @Test
+    public void testRepliesLoadedWithConstantQueries() {
+        // 200条回复，10个作者，当前用户点赞了前3条
+        List<ForumPost> replies = new ArrayList<>();
+        for (long i = 1; i <= 200; i++) {
+            ForumPost reply = new ForumPost();
+            reply.setId(i);
+            reply.setStudentId("2023" + (i % 10));
+            reply.setParentId(1000L);
+            replies.add(reply);
+        }
+        List<User> authors = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            User author = new User();
+            author.setStudentId("2023" + i);
+            author.setRealName("学生" + i);
+            authors.add(author);
+        }
+        when(userRepository.findByStudentIdIn(anyCollection())).thenReturn(authors);
+        when(forumLikeRepository.findLikedPostIds(eq("20230"), anyCollection())).thenReturn(List.of(1L, 2L, 3L));
+
+        List<ForumPostResponse> responses = assembler.toResponses(replies, "20230");
+
+        assertEquals(200, responses.size());
+        assertEquals(1L, responses.get(0).getId());
+        assertEquals("学生1", responses.get(0).getStudentName());
+        assertTrue(responses.get(2).getIsLiked());
+        assertFalse(responses.get(3).getIsLiked());
+
+        verify(userRepository, times(1)).findByStudentIdIn(anyCollection());
+        verify(forumLikeRepository, times(1)).findLikedPostIds(any(), anyCollection());
+        verifyNoMoreInteractions(userRepository, forumLikeRepository);
+    }
+
+    @Test
+    public void testEmptyPageRunsNoQueries() {
+        assertTrue(assembler.toResponses(List.of(), "20230").isEmpty());
+        verifyNoInteractions(userRepository, forumLikeRepository);
+    }
+}
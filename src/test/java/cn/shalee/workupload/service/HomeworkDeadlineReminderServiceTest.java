@@ -0,0 +1,115 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.entity.Homework;
+import cn.shalee.workupload.entity.User;
+import cn.shalee.workupload.repository.HomeworkRepository;
+import cn.shalee.workupload.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 截止提醒定时器测试
+ */
+public class HomeworkDeadlineReminderServiceTest {
+
+    private TaskScheduler taskScheduler;
+    private HomeworkRepository homeworkRepository;
+    private UserRepository userRepository;
+    private HomeworkEmailNotificationService emailNotificationService;
+    private HomeworkDeadlineReminderService service;
+
+    @BeforeEach
+    public void setUp() {
+        taskScheduler = mock(TaskScheduler.class);
+        doReturn(mock(ScheduledFuture.class)).when(taskScheduler).schedule(any(Runnable.class), any(Instant.class));
+        homeworkRepository = mock(HomeworkRepository.class);
+        userRepository = mock(UserRepository.class);
+        emailNotificationService = mock(HomeworkEmailNotificationService.class);
+        service = new HomeworkDeadlineReminderService(homeworkRepository, userRepository,
+                emailNotificationService, taskScheduler);
+    }
+
+    @Test
+    public void testReminderFiresTwoHoursBeforeDeadline() {
+        LocalDateTime deadline = LocalDateTime.now().plusDays(1);
+        service.schedule(homework(1L, deadline, null));
+
+        ArgumentCaptor<Instant> fireTime = ArgumentCaptor.forClass(Instant.class);
+        verify(taskScheduler).schedule(any(Runnable.class), fireTime.capture());
+        assertEquals(deadline.minusHours(2).atZone(ZoneId.systemDefault()).toInstant(), fireTime.getValue());
+    }
+
+    @Test
+    public void testReminderInsideWindowFiresImmediately() {
+        service.schedule(homework(1L, LocalDateTime.now().plusMinutes(30), null));
+
+        ArgumentCaptor<Instant> fireTime = ArgumentCaptor.forClass(Instant.class);
+        verify(taskScheduler).schedule(any(Runnable.class), fireTime.capture());
+        assertTrue(Duration.between(Instant.now(), fireTime.getValue()).abs().toSeconds() < 5);
+    }
+
+    @Test
+    public void testSentOrExpiredHomeworkIsNotScheduled() {
+        service.schedule(homework(1L, LocalDateTime.now().plusDays(1), LocalDateTime.now()));
+        service.schedule(homework(2L, LocalDateTime.now().minusMinutes(1), null));
+
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    public void testRescheduleCancelsPreviousTimer() {
+        ScheduledFuture<?> first = mock(ScheduledFuture.class);
+        doReturn(first).doReturn(mock(ScheduledFuture.class))
+                .when(taskScheduler).schedule(any(Runnable.class), any(Instant.class));
+
+        service.schedule(homework(1L, LocalDateTime.now().plusDays(1), null));
+        service.schedule(homework(1L, LocalDateTime.now().plusDays(2), null));
+
+        verify(first).cancel(false);
+        verify(taskScheduler, times(2)).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    public void testReminderWithoutCourseRemindsUnsubmittedStudentsOnly() {
+        Homework homework = homework(1L, LocalDateTime.now().plusHours(1), null);
+        User student = user("202303013056", 1);
+        User monitor = user("202303013001", 2);
+        when(homeworkRepository.findById(1L)).thenReturn(Optional.of(homework));
+        when(userRepository.findUnsubmittedMembers("CS2302", -1, 1L)).thenReturn(List.of(student, monitor));
+
+        service.sendDeadlineReminderForHomework(1L);
+
+        verify(emailNotificationService).enqueueHomeworkDeadlineNotifications(homework, List.of(student));
+        verify(homeworkRepository).markDeadlineReminderSent(1L);
+    }
+
+    private Homework homework(Long id, LocalDateTime deadline, LocalDateTime reminderSentAt) {
+        return Homework.builder()
+                .id(id)
+                .classCode("CS2302")
+                .deadline(deadline)
+                .deadlineReminderSentAt(reminderSentAt)
+                .build();
+    }
+
+    private User user(String studentId, int roleType) {
+        User user = new User();
+        user.setStudentId(studentId);
+        user.setRoleType(roleType);
+        return user;
+    }
+}
@@ -0,0 +1,87 @@
+package cn.shalee.workupload.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 作业打包器测试
+ */
+public class HomeworkZipPackerTest {
+
+    @TempDir
+    Path homeworkFolder;
+
+    private final HomeworkZipPacker packer = new HomeworkZipPacker();
+
+    @AfterEach
+    public void tearDown() {
+        packer.shutdown();
+    }
+
+    @Test
+    public void testPackStoresCompressedAndDeflatesText() throws Exception {
+        // 文件头为PK的docx按已压缩处理
+        byte[] docx = new byte[4096];
+        docx[0] = 'P';
+        docx[1] = 'K';
+        docx[2] = 3;
+        docx[3] = 4;
+        Path docxFile = Files.write(homeworkFolder.resolve("202303013056-report.docx"), docx);
+
+        // 扩展名为jpg但文件头无法识别，按扩展名兜底
+        Path jpgFile = Files.write(homeworkFolder.resolve("photo.jpg"), "not really a jpeg".getBytes(StandardCharsets.UTF_8));
+
+        // 纯文本需要DEFLATE
+        byte[] text = "int main() { return 0; }\n".repeat(200).getBytes(StandardCharsets.UTF_8);
+        Path textFile = Files.write(homeworkFolder.resolve("main.c"), text);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Path> written = packer.pack(List.of(docxFile, jpgFile, textFile), out);
+        assertEquals(List.of(docxFile, jpgFile, textFile), written);
+
+        Map<String, Integer> methods = new HashMap<>();
+        Map<String, byte[]> contents = new HashMap<>();
+        try (ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()), StandardCharsets.UTF_8)) {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                methods.put(entry.getName(), entry.getMethod());
+                contents.put(entry.getName(), zipIn.readAllBytes());
+            }
+        }
+
+        assertEquals(ZipEntry.STORED, methods.get("202303013056-report.docx"));
+        assertEquals(ZipEntry.STORED, methods.get("photo.jpg"));
+        assertEquals(ZipEntry.DEFLATED, methods.get("main.c"));
+        assertArrayEquals(docx, contents.get("202303013056-report.docx"));
+        assertArrayEquals(text, contents.get("main.c"));
+    }
+
+    @Test
+    public void testPackSkipsDeletedFiles() throws Exception {
+        Path kept = Files.write(homeworkFolder.resolve("kept.txt"), "kept".getBytes(StandardCharsets.UTF_8));
+        Path missing = homeworkFolder.resolve("withdrawn.pdf");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Path> written = packer.pack(List.of(missing, kept), out);
+
+        assertEquals(List.of(kept), written);
+        try (ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("kept.txt", zipIn.getNextEntry().getName());
+            assertNull(zipIn.getNextEntry());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package cn.shalee.workupload.service;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 批量邮件发送测试：用本地模拟的SMTP服务代替真实邮件服务器
+ */
+public class MailDispatcherTest {
+
+    private final Session session = Session.getInstance(new Properties());
+
+    @Test
+    public void testMessagesAreSentInBatchesOverParallelConnections() throws Exception {
+        StubSmtpSender sender = new StubSmtpSender(20);
+        MailDispatcher dispatcher = new MailDispatcher(sender, 3, 50, 10_000);
+
+        List<MimeMessage> messages = messages(300);
+        long start = System.nanoTime();
+        Map<MimeMessage, Exception> failures = dispatcher.dispatch(messages);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        dispatcher.shutdown();
+
+        assertTrue(failures.isEmpty());
+        assertEquals(300, sender.delivered.size());
+        // 每个批次只建立一次连接
+        assertEquals(6, sender.connections.get());
+        assertTrue(sender.batchSizes.stream().allMatch(size -> size <= 50));
+        assertTrue(sender.maxConcurrentConnections.get() > 1 && sender.maxConcurrentConnections.get() <= 3);
+        // 逐封建立连接并休眠100ms需要30秒以上
+        assertTrue(elapsedMillis < 5_000, "elapsed=" + elapsedMillis + "ms");
+    }
+
+    @Test
+    public void testPartialBatchFailureOnlyMarksRejectedRecipients() throws Exception {
+        StubSmtpSender sender = new StubSmtpSender(0);
+        MailDispatcher dispatcher = new MailDispatcher(sender, 2, 10, 10_000);
+
+        List<MimeMessage> messages = messages(25);
+        MimeMessage bounced = message("bounce@example.com");
+        messages.add(bounced);
+        Map<MimeMessage, Exception> failures = dispatcher.dispatch(messages);
+        dispatcher.shutdown();
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.containsKey(bounced));
+        assertEquals(25, sender.delivered.size());
+    }
+
+    @Test
+    public void testConnectionFailureMarksWholeBatch() throws Exception {
+        StubSmtpSender sender = new StubSmtpSender(0);
+        sender.refuseConnections = true;
+        MailDispatcher dispatcher = new MailDispatcher(sender, 2, 10, 10_000);
+
+        Map<MimeMessage, Exception> failures = dispatcher.dispatch(messages(15));
+        dispatcher.shutdown();
+
+        assertEquals(15, failures.size());
+    }
+
+    @Test
+    public void testUnexpectedExceptionMarksWholeBatch() throws Exception {
+        StubSmtpSender sender = new StubSmtpSender(0);
+        sender.unexpectedFailure = true;
+        MailDispatcher dispatcher = new MailDispatcher(sender, 2, 10, 10_000);
+
+        Map<MimeMessage, Exception> failures = dispatcher.dispatch(messages(15));
+        dispatcher.shutdown();
+
+        assertEquals(15, failures.size());
+        assertTrue(failures.values().stream().allMatch(e -> e instanceof IllegalStateException));
+    }
+
+    private List<MimeMessage> messages(int count) throws MessagingException {
+        List<MimeMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(message("student" + i + "@example.com"));
+        }
+        return messages;
+    }
+
+    private MimeMessage message(String to) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(to));
+        message.setSubject("test");
+        message.setText("body");
+        return message;
+    }
+
+    /**
+     * 模拟SMTP服务：每次send(MimeMessage...)相当于一个连接，连接耗时固定，拒收bounce开头的地址
+     */
+    private static class StubSmtpSender extends JavaMailSenderImpl {
+
+        private final long connectionMillis;
+        private final List<MimeMessage> delivered = new CopyOnWriteArrayList<>();
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger activeConnections = new AtomicInteger();
+        private final AtomicInteger maxConcurrentConnections = new AtomicInteger();
+        private volatile boolean refuseConnections;
+        private volatile boolean unexpectedFailure;
+
+        StubSmtpSender(long connectionMillis) {
+            this.connectionMillis = connectionMillis;
+        }
+
+        @Override
+        public void send(MimeMessage... mimeMessages) throws MailException {
+            if (refuseConnections) {
+                throw new MailSendException("Connection refused");
+            }
+            if (unexpectedFailure) {
+                throw new IllegalStateException("message could not be rendered");
+            }
+            connections.incrementAndGet();
+            maxConcurrentConnections.accumulateAndGet(activeConnections.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(connectionMillis);
+                batchSizes.add(mimeMessages.length);
+                Map<Object, Exception> failed = new LinkedHashMap<>();
+                for (MimeMessage message : mimeMessages) {
+                    if (message.getAllRecipients()[0].toString().startsWith("bounce")) {
+                        failed.put(message, new MessagingException("550 mailbox unavailable"));
+                    } else {
+                        delivered.add(message);
+                    }
+                }
+                if (!failed.isEmpty()) {
+                    throw new MailSendException(failed);
+                }
+            } catch (InterruptedException | MessagingException e) {
+                throw new MailSendException("send failed", e);
+            } finally {
+                activeConnections.decrementAndGet();
+            }
+        }
+    }
+}
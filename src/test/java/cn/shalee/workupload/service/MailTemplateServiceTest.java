@@ -0,0 +1,100 @@
+package cn.shalee.workupload.service;
+
+import cn.shalee.workupload.entity.Class;
+import cn.shalee.workupload.entity.Homework;
+import cn.shalee.workupload.repository.ClassRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.IContext;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 邮件模板测试：同一作业只渲染一次，收件人姓名逐个拼接并转义
+ */
+public class MailTemplateServiceTest {
+
+    private TemplateEngine templateEngine;
+    private MailTemplateService service;
+
+    @BeforeEach
+    public void setUp() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        TemplateEngine engine = new TemplateEngine();
+        engine.setTemplateResolver(resolver);
+        templateEngine = spy(engine);
+
+        ClassRepository classRepository = mock(ClassRepository.class);
+        Class clazz = new Class();
+        clazz.setClassCode("CS2302");
+        clazz.setClassName("计科23-2");
+        when(classRepository.findByClassCode("CS2302")).thenReturn(Optional.of(clazz));
+
+        service = new MailTemplateService(templateEngine, classRepository);
+        ReflectionTestUtils.setField(service, "systemUrl", "http://localhost:3000/");
+    }
+
+    @Test
+    public void testHomeworkBodyIsRenderedOncePerHomework() {
+        Homework homework = homework();
+
+        String first = service.render(MailTemplateService.HOMEWORK_PUBLISHED, homework, "张三");
+        String second = service.render(MailTemplateService.HOMEWORK_PUBLISHED, homework, "李四");
+
+        verify(templateEngine, times(1)).process(anyString(), any(IContext.class));
+        assertTrue(first.contains("Hi 张三"));
+        assertTrue(second.contains("Hi 李四"));
+        assertEquals(first.replace("张三", "李四"), second);
+        assertTrue(first.contains("操作系统实验一"));
+        assertTrue(first.contains("计科23-2"));
+        assertTrue(first.contains("2025年03月01日 23:59"));
+        assertTrue(first.contains("http://localhost:3000/"));
+    }
+
+    @Test
+    public void testStudentNameIsEscaped() {
+        String html = service.render(MailTemplateService.HOMEWORK_DEADLINE, homework(), "<b>Tom</b>");
+
+        assertTrue(html.contains("Hi &lt;b&gt;Tom&lt;/b&gt;"));
+        assertFalse(html.contains("<b>Tom</b>"));
+    }
+
+    @Test
+    public void testUpdatedHomeworkIsRenderedAgain() {
+        Homework homework = homework();
+        service.render(MailTemplateService.HOMEWORK_PUBLISHED, homework, "张三");
+
+        homework.setTitle("操作系统实验二");
+        homework.setUpdatedAt(homework.getUpdatedAt().plusMinutes(1));
+        String html = service.render(MailTemplateService.HOMEWORK_PUBLISHED, homework, "张三");
+
+        verify(templateEngine, times(2)).process(anyString(), any(IContext.class));
+        assertTrue(html.contains("操作系统实验二"));
+    }
+
+    private Homework homework() {
+        return Homework.builder()
+                .id(1L)
+                .classCode("CS2302")
+                .title("操作系统实验一")
+                .description("完成进程调度实验")
+                .deadline(LocalDateTime.of(2025, 3, 1, 23, 59))
+                .totalScore(100)
+                .updatedAt(LocalDateTime.of(2025, 2, 20, 10, 0))
+                .build();
+    }
+}
@@ -0,0 +1,50 @@
+package cn.shalee.workupload.util;
+
+import cn.shalee.workupload.exception.BusinessException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 游标分页工具类测试
+ */
+public class CursorCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        LocalDateTime time = LocalDateTime.of(2025, 3, 1, 8, 30, 15, 123000000);
+        String cursor = CursorCodec.encode(true, time, 42L);
+
+        CursorCodec.Cursor decoded = CursorCodec.decode(cursor, 3);
+        assertTrue(decoded.getBoolean(0));
+        assertEquals(time, decoded.getDateTime(1));
+        assertEquals(42L, decoded.getLong(2));
+    }
+
+    @Test
+    public void testBlankCursorMeansFirstPage() {
+        assertNull(CursorCodec.decode(null, 2));
+        assertNull(CursorCodec.decode("", 2));
+    }
+
+    @Test
+    public void testInvalidCursorRejected() {
+        assertThrows(BusinessException.class, () -> CursorCodec.decode("not base64!", 2));
+        // 段数不对
+        assertThrows(BusinessException.class, () -> CursorCodec.decode(CursorCodec.encode(1L), 2));
+        // 内容被篡改
+        CursorCodec.Cursor cursor = CursorCodec.decode(CursorCodec.encode("abc", 1L), 2);
+        assertThrows(BusinessException.class, () -> cursor.getDateTime(0));
+    }
+
+    @Test
+    public void testTrimAndNextCursor() {
+        List<Long> rows = List.of(10L, 9L, 8L);
+        assertEquals(List.of(10L, 9L), CursorCodec.trim(rows, 2));
+        assertEquals(CursorCodec.encode(9L), CursorCodec.nextCursor(rows, 2, id -> CursorCodec.encode(id)));
+        assertNull(CursorCodec.nextCursor(rows, 3, id -> CursorCodec.encode(id)));
+    }
+}
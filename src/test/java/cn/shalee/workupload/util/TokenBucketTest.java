@@ -0,0 +1,44 @@
+package cn.shalee.workupload.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 令牌桶测试
+ */
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstWithinCapacityDoesNotWait() {
+        TokenBucket bucket = new TokenBucket(10, 20);
+        long now = System.nanoTime();
+        assertEquals(0, bucket.reserve(20, now));
+    }
+
+    @Test
+    public void testDeficitIsPaidBackAtConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(10, 10);
+        long now = System.nanoTime();
+        assertEquals(0, bucket.reserve(10, now));
+        // 桶已空，再取5个需要等0.5秒
+        assertEquals(SECOND / 2, bucket.reserve(5, now), TimeUnit.MILLISECONDS.toNanos(1));
+        // 预支的令牌累加，后来者排在后面
+        assertEquals(SECOND, bucket.reserve(5, now), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testRefillIsCappedAtCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+        bucket.reserve(5, now);
+        // 空闲很久也只能攒满容量
+        long later = now + 60 * SECOND;
+        assertEquals(0, bucket.reserve(5, later));
+        assertTrue(bucket.reserve(1, later) > 0);
+    }
+}
@@ -0,0 +1,85 @@
+-- 索引测试用的表结构：与Hibernate根据实体建出的表一致（只保留查询用到的列），
+-- 实体上声明的唯一约束也在这里声明，其余索引全部由 db/migration 中的脚本创建
+
+CREATE TABLE homework (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    class_code VARCHAR(255) NOT NULL,
+    course_code INT,
+    title VARCHAR(255),
+    deadline TIMESTAMP,
+    status INT,
+    first_submission_id BIGINT,
+    deadline_reminder_sent_at TIMESTAMP
+);
+
+CREATE TABLE homework_submission (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    student_id VARCHAR(255) NOT NULL,
+    class_code VARCHAR(255) NOT NULL,
+    homework_id BIGINT NOT NULL,
+    submission_time TIMESTAMP,
+    submission_status INT,
+    score DECIMAL(5, 2)
+);
+
+CREATE TABLE homework_log (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    homework_id INT NOT NULL,
+    student_id VARCHAR(255) NOT NULL,
+    status INT,
+    created_at TIMESTAMP
+);
+
+CREATE TABLE forum_post (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    student_id VARCHAR(255) NOT NULL,
+    class_code VARCHAR(255) NOT NULL,
+    parent_id BIGINT,
+    title VARCHAR(255),
+    like_count INT DEFAULT 0,
+    reply_count INT DEFAULT 0,
+    view_count INT DEFAULT 0,
+    is_top BOOLEAN DEFAULT FALSE,
+    hot_score DOUBLE DEFAULT 0,
+    status INT,
+    created_at TIMESTAMP
+);
+
+CREATE TABLE forum_like (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    post_id BIGINT NOT NULL,
+    student_id VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP,
+    CONSTRAINT uk_forum_like_post_student UNIQUE (post_id, student_id)
+);
+
+CREATE TABLE user (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    email VARCHAR(255) NOT NULL UNIQUE,
+    student_id VARCHAR(255) NOT NULL UNIQUE,
+    class_code VARCHAR(255),
+    role_type INT,
+    courses INT
+);
+
+CREATE TABLE email_notification_log (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    homework_id BIGINT NOT NULL,
+    recipient_email VARCHAR(255) NOT NULL,
+    recipient_student_id VARCHAR(255) NOT NULL,
+    email_type INT NOT NULL,
+    send_status INT NOT NULL,
+    send_time TIMESTAMP
+);
+
+CREATE TABLE email_outbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    homework_id BIGINT NOT NULL,
+    email_type INT NOT NULL,
+    recipient_email VARCHAR(255) NOT NULL,
+    status INT NOT NULL,
+    attempts INT NOT NULL,
+    next_attempt_at TIMESTAMP NOT NULL,
+    locked_until TIMESTAMP,
+    CONSTRAINT uk_email_outbox_recipient UNIQUE (homework_id, email_type, recipient_email)
+);